@@ -70,9 +70,6 @@ export class AppComponent {
         console.log(event);
         //console.log(this.letSee.find(item => item === "faceDetected"))
         this.imageComparisonWebInfo = Object.assign(new ImageComparisonWebInfo(), event.body);
-        this.imageComparisonWebInfo.mrz = this.imageComparisonWebInfo.mrz.replace('MrzData(', '')
-                                                                         .replace(')', '')
-                                                                         .replace(', ]', ']');
 
         this.showProgressIcon = false;
       }
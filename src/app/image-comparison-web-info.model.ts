@@ -1,3 +1,5 @@
+import {MrzData} from "./mrz-data.model";
+
 export class ImageComparisonWebInfo {
   public faceDetected: boolean;
   public faceScore: number;
@@ -11,5 +13,7 @@ export class ImageComparisonWebInfo {
   public idBackDocumentScore: number;
   public faceComparisonResult: boolean;
   public faceComparisonScore: number;
-  public mrz: string;
+  public faceComparisonFailure: 'THROTTLED' | 'INVALID_IMAGE' | 'NO_FACE' | 'TIMEOUT' | 'SERVICE_ERROR';
+  public mrz: MrzData;
+  public mrzSide: 'FRONT' | 'BACK';
 }
@@ -0,0 +1,26 @@
+export type MrzFieldConfidence = 'VALID' | 'CORRECTED' | 'UNCHECKED' | 'INVALID';
+
+export class MrzData {
+  public input: string;
+  public error: boolean;
+  public missing: boolean;
+  public passportCountryCode: string;
+  public passportCountry: string;
+  public nationalityCode: string;
+  public surname: string;
+  public surnameCapital: string;
+  public givenNames: string[];
+  public givenNamesCapital: string[];
+  public documentNumber: string;
+  public birthYear: string;
+  public birthMonth: string;
+  public birthDay: string;
+  public sex: string;
+  public validYear: string;
+  public validMonth: string;
+  public validDay: string;
+  public documentNumberConfidence: MrzFieldConfidence;
+  public birthDateConfidence: MrzFieldConfidence;
+  public validDateConfidence: MrzFieldConfidence;
+  public compositeConfidence: MrzFieldConfidence;
+}
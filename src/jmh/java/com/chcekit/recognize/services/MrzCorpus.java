@@ -0,0 +1,115 @@
+package com.chcekit.recognize.services;
+
+import com.google.cloud.vision.v1.Block;
+import com.google.cloud.vision.v1.Page;
+import com.google.cloud.vision.v1.Paragraph;
+import com.google.cloud.vision.v1.Symbol;
+import com.google.cloud.vision.v1.TextAnnotation;
+import com.google.cloud.vision.v1.Word;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Documents of mrz-corpus.txt as OCR text blocks, see the file for the format.
+ */
+final class MrzCorpus {
+
+    static final String CLEAN = "clean";
+    static final String NOISY = "noisy";
+    static final String TRUNCATED = "truncated";
+    static final String NON_ASCII = "non-ascii";
+
+    private static final String RESOURCE = "/mrz-corpus.txt";
+
+    private MrzCorpus() {
+    }
+
+    static MrzFormatRegistry registry() {
+        return new MrzFormatRegistry(Arrays.asList(new MrzParserService(),
+                                                   new FrenchMrzParserService(),
+                                                   new Td1MrzParserService(),
+                                                   new Td2MrzParserService()));
+    }
+
+    /**
+     * @return text blocks of every document of the section
+     */
+    static List<List<String>> documents(String section) {
+        List<List<String>> documents = new ArrayList<>();
+        List<String> document = new ArrayList<>();
+        boolean inSection = false;
+
+        try (InputStream input = MrzCorpus.class.getResourceAsStream(RESOURCE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("[")) {
+                    inSection = line.equals("[" + section + "]");
+                    continue;
+                }
+                if (!inSection) {
+                    continue;
+                }
+                if (line.isEmpty()) {
+                    if (!document.isEmpty()) {
+                        documents.add(document);
+                        document = new ArrayList<>();
+                    }
+                } else {
+                    document.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (!document.isEmpty()) {
+            documents.add(document);
+        }
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("No documents in corpus section " + section);
+        }
+        return documents;
+    }
+
+    /**
+     * Builds a document text annotation the way Vision returns it: one symbol per character,
+     * words split on spaces, the given text blocks preceded by fillerBlocks blocks of other document text.
+     */
+    static TextAnnotation textAnnotation(List<String> textBlocks, int fillerBlocks) {
+        Page.Builder page = Page.newBuilder();
+        for (int i = 0; i < fillerBlocks; i++) {
+            page.addBlocks(block("LINE " + i + " OF THE DOCUMENT TEXT ABOVE THE MRZ"));
+        }
+        for (String textBlock : textBlocks) {
+            page.addBlocks(block(textBlock));
+        }
+        return TextAnnotation.newBuilder()
+                             .addPages(page)
+                             .build();
+    }
+
+    private static Block block(String text) {
+        Paragraph.Builder paragraph = Paragraph.newBuilder();
+        for (String wordText : text.split(" ")) {
+            Word.Builder word = Word.newBuilder();
+            wordText.codePoints()
+                    .forEach(codePoint -> word.addSymbols(Symbol.newBuilder().setText(new String(Character.toChars(codePoint)))));
+            paragraph.addWords(word);
+        }
+        return Block.newBuilder()
+                    .addParagraphs(paragraph)
+                    .build();
+    }
+}
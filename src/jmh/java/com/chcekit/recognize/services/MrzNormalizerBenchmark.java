@@ -0,0 +1,58 @@
+package com.chcekit.recognize.services;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of OCR text on one and on all available threads,
+ * a drop of the per-thread throughput under contention points to shared state in the transliteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MrzNormalizerBenchmark {
+
+    private static final Map<String, String> TEXTS = ImmutableMap.of(
+      "ascii", "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C36UTO7408122F1204159ZE184226B<<<<<10",
+      "lower-case", "p<utoeriksson<<anna<maria<<<<<<<<<<<<<<<<<<<l898902c36uto7408122f1204159ze184226b<<<<<10",
+      "latin", "P<DEUMÜLLER<<JÖRG<<<<<<<<<<<<<<<<<<<<<<<<<<<C01X00T478DEU6408125M2702283<<<<<<<<<<<<<<<4",
+      "cyrillic", "P<RUSИВАНОВ<<ИВАН<<<<<<<<<<<<<<<<<<<<<<<<<<<7104000000RUS8001014M2501017<<<<<<<<<<<<<<04");
+
+    @Param({"ascii", "lower-case", "latin", "cyrillic"})
+    String script;
+
+    String text;
+
+    @Setup
+    public void setUp() {
+        text = TEXTS.get(script);
+    }
+
+    @Benchmark
+    public String normalize() {
+        return MrzNormalizer.normalize(text);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String normalizeContended() {
+        return MrzNormalizer.normalize(text);
+    }
+}
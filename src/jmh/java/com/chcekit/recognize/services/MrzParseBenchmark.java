@@ -0,0 +1,92 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MRZ detection and parsing of one document per operation, cycling through the corpus section.
+ * Run with -prof gc for the allocation rate per document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MrzParseBenchmark {
+
+    private static final String PASSPORT_MRZ = "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C36UTO7408122F1204159ZE184226B<<<<<10";
+    private static final String FRENCH_ID_MRZ = "IDFRA00000<<<<<<<<<<<<<<<<<<<<7640160306730326262LAURENCE<<DANI6616667F6";
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        @Param({MrzCorpus.CLEAN, MrzCorpus.NOISY, MrzCorpus.TRUNCATED, MrzCorpus.NON_ASCII})
+        String section;
+
+        MrzFormatRegistry registry;
+        List<List<String>> documents;
+
+        @Setup
+        public void setUp() {
+            registry = MrzCorpus.registry();
+            documents = MrzCorpus.documents(section);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        List<String> next(Corpus corpus) {
+            List<String> document = corpus.documents.get(next);
+            next = (next + 1) % corpus.documents.size();
+            return document;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Parsers {
+
+        final MrzParserService passportParser = new MrzParserService();
+        final FrenchMrzParserService frenchIdParser = new FrenchMrzParserService();
+    }
+
+    @Benchmark
+    public MrzData detect(Corpus corpus, Cursor cursor) {
+        return corpus.registry.detect(cursor.next(corpus));
+    }
+
+    /**
+     * The registry and parsers are shared by all request threads.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MrzData detectContended(Corpus corpus, Cursor cursor) {
+        return corpus.registry.detect(cursor.next(corpus));
+    }
+
+    @Benchmark
+    public MrzData parsePassport(Parsers parsers) {
+        return parsers.passportParser.parse(PASSPORT_MRZ);
+    }
+
+    @Benchmark
+    public MrzData parseFrenchId(Parsers parsers) {
+        return parsers.frenchIdParser.parse(FRENCH_ID_MRZ);
+    }
+}
@@ -0,0 +1,63 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import com.google.cloud.vision.v1.TextAnnotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a Vision document text annotation into text blocks and finding the MRZ in them,
+ * for a passport page with the given number of text blocks above the MRZ.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcrTextBlocksBenchmark {
+
+    @Param({"5", "50"})
+    int blocksAboveMrz;
+
+    TextAnnotation textAnnotation;
+    MrzFormatRegistry registry;
+
+    @Setup
+    public void setUp() {
+        textAnnotation = MrzCorpus.textAnnotation(MrzCorpus.documents(MrzCorpus.CLEAN).get(0), blocksAboveMrz);
+        registry = MrzCorpus.registry();
+    }
+
+    /**
+     * Builds the text of every block, the cost of assembling all OCR text up front.
+     */
+    @Benchmark
+    public void buildAllBlocks(Blackhole blackhole) {
+        List<String> textBlocks = OcrTextBlocks.of(textAnnotation);
+        for (int i = 0; i < textBlocks.size(); i++) {
+            blackhole.consume(textBlocks.get(i));
+        }
+    }
+
+    /**
+     * Builds only the blocks read on the way from the bottom of the page to the MRZ.
+     */
+    @Benchmark
+    public MrzData detectMrz() {
+        return registry.detect(OcrTextBlocks.of(textAnnotation));
+    }
+}
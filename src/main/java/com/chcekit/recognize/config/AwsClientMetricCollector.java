@@ -0,0 +1,91 @@
+package com.chcekit.recognize.config;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.TimingInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes per-request metrics of an AWS SDK client:
+ * aws.client.requests - latency of the whole call including retries, by operation and outcome,
+ * aws.client.http.requests - latency of single HTTP attempts,
+ * aws.client.retries and aws.client.throttles - counts of retried and throttled attempts,
+ * aws.client.pool.leased/pending/available - HTTP connection pool state seen by the latest request.
+ */
+public class AwsClientMetricCollector extends RequestMetricCollector {
+
+  private final MeterRegistry meterRegistry;
+  private final Tags tags;
+
+  private final Timer httpRequests;
+  private final Counter retries;
+  private final Counter throttles;
+
+  private final AtomicLong poolLeased = new AtomicLong();
+  private final AtomicLong poolPending = new AtomicLong();
+  private final AtomicLong poolAvailable = new AtomicLong();
+
+  public AwsClientMetricCollector(MeterRegistry meterRegistry, String client) {
+    this.meterRegistry = meterRegistry;
+    this.tags = Tags.of("client", client);
+
+    httpRequests = meterRegistry.timer("aws.client.http.requests", tags);
+    retries = meterRegistry.counter("aws.client.retries", tags);
+    throttles = meterRegistry.counter("aws.client.throttles", tags);
+
+    meterRegistry.gauge("aws.client.pool.leased", tags, poolLeased);
+    meterRegistry.gauge("aws.client.pool.pending", tags, poolPending);
+    meterRegistry.gauge("aws.client.pool.available", tags, poolAvailable);
+  }
+
+  @Override
+  public void collectMetrics(Request<?> request, Response<?> response) {
+    TimingInfo timingInfo = request.getAWSRequestMetrics().getTimingInfo();
+
+    Double executeMillis = timingInfo.getTimeTakenMillisIfKnown();
+    if (executeMillis != null) {
+      meterRegistry.timer("aws.client.requests", tags.and("operation", operation(request), "outcome", response == null ? "error" : "success"))
+                   .record((long) (executeMillis * 1_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    for (TimingInfo attempt : timingInfo.getAllSubMeasurements(Field.HttpRequestTime.name())) {
+      Double attemptMillis = attempt.getTimeTakenMillisIfKnown();
+      if (attemptMillis != null) {
+        httpRequests.record((long) (attemptMillis * 1_000_000), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    // RequestCount is incremented for every HTTP attempt
+    retries.increment(Math.max(0, counter(timingInfo, Field.RequestCount) - 1));
+    throttles.increment(counter(timingInfo, Field.ThrottleException));
+
+    update(poolLeased, timingInfo, Field.HttpClientPoolLeasedCount);
+    update(poolPending, timingInfo, Field.HttpClientPoolPendingCount);
+    update(poolAvailable, timingInfo, Field.HttpClientPoolAvailableCount);
+  }
+
+  private static String operation(Request<?> request) {
+    String name = request.getOriginalRequest().getClass().getSimpleName();
+    return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+  }
+
+  private static long counter(TimingInfo timingInfo, Field field) {
+    Number value = timingInfo.getCounter(field.name());
+    return value == null ? 0 : value.longValue();
+  }
+
+  private static void update(AtomicLong gauge, TimingInfo timingInfo, Field field) {
+    Number value = timingInfo.getCounter(field.name());
+    if (value != null) {
+      gauge.set(value.longValue());
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.chcekit.recognize.config;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class BatchExecutorConfig {
+
+  /**
+   * Executor for the Vision calls of batch verification, one chunk of items per task.
+   * A batch keeps at most one chunk per thread in flight, the queue holds the chunks of concurrent batches;
+   * when it is full the batch is failed rather than queued without bound.
+   * Queue depth and active threads are published as executor.* metrics.
+   */
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService batchVisionExecutor(BatchVerificationProperties properties, MeterRegistry meterRegistry) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      properties.getMaxConcurrentVisionCalls(),
+      properties.getMaxConcurrentVisionCalls(),
+      0, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(properties.getVisionQueueCapacity()),
+      new ThreadFactoryBuilder().setNameFormat("batch-vision-%d").setDaemon(true).build(),
+      new ThreadPoolExecutor.AbortPolicy());
+
+    new ExecutorServiceMetrics(executor, "batchVisionExecutor", Collections.emptyList()).bindTo(meterRegistry);
+
+    return executor;
+  }
+
+  /**
+   * Executor for the Rekognition comparisons of batch verification.
+   * When all threads are busy and the queue is full the comparison runs on the batch thread submitting it,
+   * which slows down the next Vision calls of the batch instead of failing the item.
+   */
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService batchComparisonExecutor(BatchVerificationProperties properties, MeterRegistry meterRegistry) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      properties.getMaxConcurrentComparisons(),
+      properties.getMaxConcurrentComparisons(),
+      0, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(properties.getComparisonQueueCapacity()),
+      new ThreadFactoryBuilder().setNameFormat("batch-rekognition-%d").setDaemon(true).build(),
+      new ThreadPoolExecutor.CallerRunsPolicy());
+
+    new ExecutorServiceMetrics(executor, "batchComparisonExecutor", Collections.emptyList()).bindTo(meterRegistry);
+
+    return executor;
+  }
+}
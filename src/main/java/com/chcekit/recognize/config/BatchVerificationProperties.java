@@ -0,0 +1,31 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.batch")
+public class BatchVerificationProperties {
+  // directory the manifest paths are resolved against, batch verification is disabled when not set
+  private String baseDirectory;
+
+  // images per batchAnnotateImages call, the Vision API accepts at most 16
+  private int visionBatchSize = 15;
+
+  private int maxConcurrentVisionCalls = 4;
+  private int maxConcurrentComparisons = 8;
+
+  // chunks of concurrent batches waiting for a Vision thread, a batch beyond this fails
+  private int visionQueueCapacity = 16;
+
+  // comparisons waiting for a thread, beyond this they run on the batch thread submitting them
+  private int comparisonQueueCapacity = 64;
+
+  // attempts to annotate a chunk the Vision batch budget rejects, see recognize.rate-limit.vision-batch
+  private int visionAttempts = 3;
+
+  // time limit for streaming the whole batch
+  private long timeoutMinutes = 60;
+}
@@ -0,0 +1,22 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.face-gate")
+public class FaceGateProperties {
+  // check and crop faces found by Vision before they are compared by Rekognition
+  private boolean enabled = true;
+
+  // shorter side in pixels of the smallest face worth comparing
+  private int minFaceSize = 40;
+
+  // selfies with more confident faces are not compared, it would be unclear whose face is verified
+  private int maxSelfieFaces = 1;
+
+  // margin added around the face on each side when cropping, relative to the face size
+  private double cropPadding = 0.5;
+}
@@ -0,0 +1,81 @@
+package com.chcekit.recognize.config;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.cloud.vision.v1.ImageAnnotatorSettings;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Slf4j
+public class GoogleVisionConfig {
+
+  /**
+   * Long-lived Vision client shared by all requests.
+   * Creating a client opens gRPC channels, performs the TLS handshake and loads credentials,
+   * so it is done once at startup instead of on every call.
+   */
+  @Bean
+  public ImageAnnotatorClient imageAnnotatorClient(GoogleVisionProperties properties) throws IOException {
+    if (properties.isPlaintext()) {
+      return ImageAnnotatorClient.create(plaintextSettings(properties));
+    }
+
+    InstantiatingGrpcChannelProvider.Builder channelProvider = ImageAnnotatorSettings.defaultGrpcTransportProviderBuilder()
+                                                                                     .setPoolSize(properties.getChannelPoolSize());
+    if (properties.getEndpoint() != null) {
+      channelProvider.setEndpoint(properties.getEndpoint());
+    }
+
+    ImageAnnotatorSettings settings = ImageAnnotatorSettings.newBuilder()
+                                                            .setTransportChannelProvider(channelProvider.build())
+                                                            .build();
+
+    return ImageAnnotatorClient.create(settings);
+  }
+
+  /**
+   * Settings for a local stand-in of the Vision API, the channel provider of the client always uses TLS.
+   */
+  private static ImageAnnotatorSettings plaintextSettings(GoogleVisionProperties properties) throws IOException {
+    ManagedChannel channel = ManagedChannelBuilder.forTarget(properties.getEndpoint())
+                                                  .usePlaintext(true)
+                                                  .build();
+
+    return ImageAnnotatorSettings.newBuilder()
+                                 .setTransportChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+                                 .setCredentialsProvider(NoCredentialsProvider.create())
+                                 .build();
+  }
+
+  /**
+   * Drains in-flight Vision calls before the channels are closed.
+   */
+  @Bean
+  public DisposableBean imageAnnotatorClientShutdown(ImageAnnotatorClient imageAnnotatorClient, GoogleVisionProperties properties) {
+    return () -> {
+      imageAnnotatorClient.shutdown();
+      if (!imageAnnotatorClient.awaitTermination(properties.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+        log.warn("Vision client did not terminate in {}s, forcing shutdown", properties.getShutdownTimeoutSeconds());
+        imageAnnotatorClient.shutdownNow();
+      }
+
+      // a fixed channel is not owned by the client
+      TransportChannelProvider channelProvider = imageAnnotatorClient.getSettings().getTransportChannelProvider();
+      if (!channelProvider.shouldAutoClose()) {
+        channelProvider.getTransportChannel().shutdownNow();
+      }
+    };
+  }
+}
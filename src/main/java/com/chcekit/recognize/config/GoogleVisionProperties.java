@@ -0,0 +1,22 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.google-vision")
+public class GoogleVisionProperties {
+  // number of gRPC channels shared by all Vision API calls
+  private int channelPoolSize = 4;
+
+  // how long to wait for in-flight calls when the application shuts down
+  private long shutdownTimeoutSeconds = 10;
+
+  // host:port of a Vision API compatible endpoint, e.g. a local stand-in, the Google endpoint is used when not set
+  private String endpoint;
+
+  // connect to the endpoint without TLS and credentials, only for local stand-ins
+  private boolean plaintext;
+}
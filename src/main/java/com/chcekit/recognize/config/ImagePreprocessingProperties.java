@@ -0,0 +1,20 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.preprocessing")
+public class ImagePreprocessingProperties {
+  private boolean enabled = true;
+
+  // longest image side sent for each kind of detection, larger images are downscaled
+  private int labelMaxDimension = 1024;
+  private int faceMaxDimension = 1024;
+  private int compareFacesMaxDimension = 1600;
+
+  // JPEG quality (0-1) of re-encoded images
+  private float jpegQuality = 0.85f;
+}
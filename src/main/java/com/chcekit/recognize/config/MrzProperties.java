@@ -0,0 +1,16 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.mrz")
+public class MrzProperties {
+  // OCR the back of the ID together with the front instead of only after the front has no MRZ
+  private boolean speculativeRead;
+
+  // send only the locally located MRZ strip for OCR instead of the whole document
+  private boolean regionCrop = false;
+}
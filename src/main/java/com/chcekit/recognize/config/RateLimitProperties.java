@@ -0,0 +1,55 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.rate-limit")
+public class RateLimitProperties {
+  // calls to the external APIs are not limited when disabled
+  private boolean enabled = true;
+
+  // how long a call may wait for a rate token and a concurrency slot, then it is rejected with 503
+  private long maxWaitMillis = 500;
+
+  // Vision batchAnnotateImages, every image of a batch takes one token
+  private Limit vision = new Limit(24, 16, 64);
+
+  // Vision calls of batch verification, a budget of their own so that batches cannot take the tokens of interactive requests,
+  // the rates of both Vision budgets add up to the quota; batch calls wait for their turn instead of failing fast
+  private Limit visionBatch = new Limit(6, 4, 8, 60000);
+
+  // Rekognition CompareFaces
+  private Limit rekognition = new Limit(20, 8, 50);
+
+  @Data
+  @NoArgsConstructor
+  public static class Limit {
+    // token bucket rate, should match the quota of the account per instance
+    private double permitsPerSecond;
+
+    // AIMD concurrency limit starts here, grows by one per window of successful calls
+    // and is multiplied by the backoff ratio when the API throttles or times out
+    private int initialConcurrency;
+    private int minConcurrency = 1;
+    private int maxConcurrency;
+    private double backoffRatio = 0.7;
+
+    // how long a call may wait for a rate token and a concurrency slot, 0 uses the common max wait
+    private long maxWaitMillis;
+
+    public Limit(double permitsPerSecond, int initialConcurrency, int maxConcurrency) {
+      this.permitsPerSecond = permitsPerSecond;
+      this.initialConcurrency = initialConcurrency;
+      this.maxConcurrency = maxConcurrency;
+    }
+
+    public Limit(double permitsPerSecond, int initialConcurrency, int maxConcurrency, long maxWaitMillis) {
+      this(permitsPerSecond, initialConcurrency, maxConcurrency);
+      this.maxWaitMillis = maxWaitMillis;
+    }
+  }
+}
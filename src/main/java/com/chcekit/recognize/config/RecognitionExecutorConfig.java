@@ -0,0 +1,38 @@
+package com.chcekit.recognize.config;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class RecognitionExecutorConfig {
+
+  /**
+   * Executor for blocking calls to external recognition APIs.
+   * Keeps them off the common ForkJoinPool; when all threads are busy and the queue is full
+   * new tasks are rejected, which is reported to the client as 503 Service Unavailable.
+   * Queue depth and active threads are published as executor.* metrics.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService recognitionExecutor(RecognitionExecutorProperties properties, MeterRegistry meterRegistry) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      properties.getCorePoolSize(),
+      properties.getMaxPoolSize(),
+      properties.getKeepAliveSeconds(), TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+      new ThreadFactoryBuilder().setNameFormat("recognition-io-%d").setDaemon(true).build(),
+      new ThreadPoolExecutor.AbortPolicy());
+
+    new ExecutorServiceMetrics(executor, "recognitionExecutor", Collections.emptyList()).bindTo(meterRegistry);
+
+    return executor;
+  }
+}
@@ -0,0 +1,19 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.executor")
+public class RecognitionExecutorProperties {
+  // threads blocked on outbound Vision/Rekognition calls
+  private int corePoolSize = 16;
+  private int maxPoolSize = 32;
+
+  // calls waiting for a thread, requests beyond this are rejected with 503
+  private int queueCapacity = 100;
+
+  private long keepAliveSeconds = 60;
+}
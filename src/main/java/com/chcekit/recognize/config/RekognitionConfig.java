@@ -0,0 +1,85 @@
+package com.chcekit.recognize.config;
+
+import brave.Tracing;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.retry.PredefinedBackoffStrategies;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.rekognition.AmazonRekognitionAsync;
+import com.amazonaws.services.rekognition.AmazonRekognitionAsyncClientBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class RekognitionConfig {
+
+  /**
+   * Long-lived Rekognition client shared by all requests.
+   * The async client also implements the blocking API, so synchronous and asynchronous calls
+   * share one HTTP connection pool sized by max-connections. Its worker threads are published
+   * as executor.* metrics and the HTTP client as aws.client.* metrics.
+   * Calls carry the trace context of the caller to the worker threads, so async callbacks log with its trace id.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public AmazonRekognitionAsync amazonRekognition(RekognitionProperties properties, MeterRegistry meterRegistry, Tracing tracing) {
+    ExecutorService executor = Executors.newFixedThreadPool(
+      properties.getMaxConnections(),
+      new ThreadFactoryBuilder().setNameFormat("rekognition-%d").setDaemon(true).build());
+    new ExecutorServiceMetrics(executor, "rekognitionClient", Collections.emptyList()).bindTo(meterRegistry);
+
+    AmazonRekognitionAsyncClientBuilder builder = AmazonRekognitionAsyncClientBuilder.standard()
+                                                                                     .withCredentials(credentialsProvider(properties))
+                                                                                     .withClientConfiguration(clientConfiguration(properties))
+                                                                                     .withMetricsCollector(new AwsClientMetricCollector(meterRegistry, "rekognition"))
+                                                                                     .withExecutorFactory(() -> tracing.currentTraceContext().executorService(executor));
+    if (properties.getEndpoint() != null) {
+      builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(properties.getEndpoint(), properties.getRegion()));
+    } else {
+      builder.withRegion(properties.getRegion());
+    }
+    return builder.build();
+  }
+
+  private static ClientConfiguration clientConfiguration(RekognitionProperties properties) {
+    RetryPolicy retryPolicy = new RetryPolicy(
+      PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+      new PredefinedBackoffStrategies.FullJitterBackoffStrategy(properties.getRetryBaseDelayMillis(), properties.getRetryMaxBackoffMillis()),
+      properties.getMaxErrorRetry(),
+      true);
+
+    return new ClientConfiguration().withMaxConnections(properties.getMaxConnections())
+                                    .withConnectionTimeout(properties.getConnectionTimeoutMillis())
+                                    .withSocketTimeout(properties.getSocketTimeoutMillis())
+                                    .withRequestTimeout(properties.getRequestTimeoutMillis())
+                                    .withClientExecutionTimeout(properties.getClientExecutionTimeoutMillis())
+                                    .withTcpKeepAlive(properties.isTcpKeepAlive())
+                                    .withConnectionTTL(properties.getConnectionTtlMillis())
+                                    .withConnectionMaxIdleMillis(properties.getConnectionMaxIdleMillis())
+                                    .withMaxErrorRetry(properties.getMaxErrorRetry())
+                                    .withRetryPolicy(retryPolicy);
+  }
+
+  // the default chain looks at the environment, system properties, the shared credentials file and the instance/container role
+  private static AWSCredentialsProvider credentialsProvider(RekognitionProperties properties) {
+    if (properties.isAnonymous()) {
+      return new AWSStaticCredentialsProvider(new AnonymousAWSCredentials());
+    }
+    if (properties.getProfile() != null) {
+      return new ProfileCredentialsProvider(properties.getProfile());
+    }
+    return DefaultAWSCredentialsProviderChain.getInstance();
+  }
+}
@@ -0,0 +1,48 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.rekognition")
+public class RekognitionProperties {
+  private String region = "eu-west-1";
+
+  // URL of a Rekognition compatible endpoint, e.g. a local stand-in, the regional AWS endpoint is used when not set
+  private String endpoint;
+
+  // send unsigned requests, only for local stand-ins
+  private boolean anonymous;
+
+  // named profile from the shared credentials file, the default provider chain is used when not set
+  private String profile;
+
+  // size of the HTTP connection pool and of the async client thread pool
+  private int maxConnections = 50;
+
+  private int connectionTimeoutMillis = 2000;
+
+  private int socketTimeoutMillis = 10000;
+
+  // timeout of a single HTTP attempt
+  private int requestTimeoutMillis = 15000;
+
+  // timeout of the whole call including retries
+  private int clientExecutionTimeoutMillis = 30000;
+
+  private boolean tcpKeepAlive = true;
+
+  // pooled connections are recycled after this time so DNS changes of the endpoint are picked up
+  private long connectionTtlMillis = 60000;
+
+  private long connectionMaxIdleMillis = 30000;
+
+  private int maxErrorRetry = 3;
+
+  // full jitter backoff: a retry waits a random time up to min(max, base * 2^retries)
+  private int retryBaseDelayMillis = 100;
+
+  private int retryMaxBackoffMillis = 5000;
+}
@@ -0,0 +1,59 @@
+package com.chcekit.recognize.config;
+
+import com.chcekit.recognize.model.FaceComparisonResult;
+import com.chcekit.recognize.model.ImageAnnotation;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches of external recognition results keyed by image content hash,
+ * so retried submissions of the same images do not call the APIs again.
+ * Hit/miss statistics are published under the cache.* metrics.
+ */
+@Configuration
+public class ResultCacheConfig {
+
+  // labels and faces with their landmarks
+  private static final int ANNOTATION_BYTES = 4096;
+
+  // the Vision symbols of a character with their bounding boxes, confidences and detected languages
+  private static final int BYTES_PER_TEXT_CHARACTER = 700;
+
+  /**
+   * Annotations keep the Vision text annotation their text blocks are built from, so the cache is bounded
+   * by the estimated memory of the entries rather than by their number.
+   */
+  @Bean
+  public Cache<String, ImageAnnotation> visionResultCache(ResultCacheProperties properties, MeterRegistry meterRegistry) {
+    Cache<String, ImageAnnotation> cache = CacheBuilder.newBuilder()
+                                                       .maximumWeight(properties.getVisionMaximumKilobytes())
+                                                       .weigher(ResultCacheConfig::kilobytes)
+                                                       .expireAfterWrite(properties.getTtlMinutes(), TimeUnit.MINUTES)
+                                                       .recordStats()
+                                                       .build();
+    return GuavaCacheMetrics.monitor(meterRegistry, cache, "vision.annotations");
+  }
+
+  @Bean
+  public Cache<String, FaceComparisonResult> rekognitionResultCache(ResultCacheProperties properties, MeterRegistry meterRegistry) {
+    return GuavaCacheMetrics.monitor(meterRegistry, newCache(properties), "rekognition.comparisons");
+  }
+
+  private static int kilobytes(String key, ImageAnnotation annotation) {
+    return (int) ((ANNOTATION_BYTES + (long) annotation.getTextLength() * BYTES_PER_TEXT_CHARACTER) / 1024);
+  }
+
+  private static <V> Cache<String, V> newCache(ResultCacheProperties properties) {
+    return CacheBuilder.newBuilder()
+                       .maximumSize(properties.getMaximumSize())
+                       .expireAfterWrite(properties.getTtlMinutes(), TimeUnit.MINUTES)
+                       .recordStats()
+                       .build();
+  }
+}
@@ -0,0 +1,19 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.result-cache")
+public class ResultCacheProperties {
+  // maximum number of cached Rekognition results, least recently used entries are evicted first
+  private long maximumSize = 1000;
+
+  // estimated memory of the cached Vision results, a document with text takes a few hundred kilobytes
+  private long visionMaximumKilobytes = 131072;
+
+  // how long a result stays in the cache after it was computed
+  private long ttlMinutes = 30;
+}
@@ -0,0 +1,13 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.stage-timing")
+public class StageTimingProperties {
+  // add the latency of every stage of /api/collect to the response as a Server-Timing header
+  private boolean header = false;
+}
@@ -0,0 +1,21 @@
+package com.chcekit.recognize.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "recognize.upload")
+public class UploadProperties {
+  // largest accepted image part, reading stops as soon as a part crosses it
+  private long maxPartBytes = 10 * 1024 * 1024;
+  // largest accepted /api/collect body, a bigger declared Content-Length is rejected before anything is read
+  private long maxRequestBytes = 25 * 1024 * 1024;
+  // format and dimensions of an image have to be found within this many leading bytes of its part
+  private int headerScanBytes = 256 * 1024;
+  // Rekognition does not accept smaller images
+  private int minImageDimension = 80;
+  // bigger images take too much memory to decode for preprocessing
+  private long maxImagePixels = 50_000_000;
+}
@@ -0,0 +1,72 @@
+package com.chcekit.recognize.controllers;
+
+import com.chcekit.recognize.config.BatchVerificationProperties;
+import com.chcekit.recognize.model.BatchItem;
+import com.chcekit.recognize.model.BatchItemResult;
+import com.chcekit.recognize.services.BatchVerificationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RestController()
+@RequestMapping(path = "/api")
+public class BatchVerificationController {
+
+  private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+  private final BatchVerificationService batchVerificationService;
+  private final BatchVerificationProperties batchVerificationProperties;
+
+  public BatchVerificationController(BatchVerificationService batchVerificationService, BatchVerificationProperties batchVerificationProperties) {
+    this.batchVerificationService = batchVerificationService;
+    this.batchVerificationProperties = batchVerificationProperties;
+  }
+
+  /**
+   * Verifies a manifest of stored document sets.
+   * Results are streamed as newline delimited JSON, one line per item in completion order.
+   */
+  @PostMapping(path = "/collect/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<ResponseBodyEmitter> collectDocumentsBatch(@RequestBody List<BatchItem> items) {
+    if (!batchVerificationService.isEnabled()) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    ResponseBodyEmitter emitter = new ResponseBodyEmitter(TimeUnit.MINUTES.toMillis(batchVerificationProperties.getTimeoutMinutes()));
+
+    batchVerificationService.verify(items, result -> send(emitter, result))
+                            .whenComplete((done, e) -> {
+                              if (e == null) {
+                                emitter.complete();
+                              } else {
+                                emitter.completeWithError(e);
+                              }
+                            });
+
+    return ResponseEntity.ok()
+                         .contentType(APPLICATION_NDJSON)
+                         .body(emitter);
+  }
+
+  // results come from several threads, a line has to be written at once
+  private static void send(ResponseBodyEmitter emitter, BatchItemResult result) {
+    synchronized (emitter) {
+      try {
+        emitter.send(result, MediaType.APPLICATION_JSON);
+        emitter.send("\n", MediaType.TEXT_PLAIN);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -1,147 +1,233 @@
 package com.chcekit.recognize.controllers;
 
+import brave.Tracer;
+import com.chcekit.recognize.config.MrzProperties;
+import com.chcekit.recognize.config.StageTimingProperties;
+import com.chcekit.recognize.model.DocumentSide;
 import com.chcekit.recognize.model.FaceComparisonResult;
-import com.chcekit.recognize.model.ImageComparisonWebInfo;
+import com.chcekit.recognize.model.ImageAnnotation;
+import com.chcekit.recognize.model.ImageBytes;
 import com.chcekit.recognize.model.ImageLabel;
 import com.chcekit.recognize.model.MrzData;
-import com.chcekit.recognize.services.AmazonRekognitionService;
+import com.chcekit.recognize.model.MrzRead;
+import com.chcekit.recognize.services.DocumentVerificationService;
+import com.chcekit.recognize.services.FaceComparisonException;
 import com.chcekit.recognize.services.GoogleVisionService;
+import com.chcekit.recognize.services.StageTimer;
 import com.google.cloud.vision.v1.FaceAnnotation;
+import com.google.cloud.vision.v1.Feature;
 import com.google.cloud.vision.v1.Image;
-import com.google.protobuf.ByteString;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.ByteBuffer;
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 @RestController()
+@Slf4j
 @RequestMapping(path = "/api")
 public class FaceRecognizeController {
 
-  private final String IDENTITY_DOCUMENT_LABEL = "identity document";
-
   private final GoogleVisionService googleVisionService;
-  private final AmazonRekognitionService amazonRekognitionService;
-
-  public FaceRecognizeController(GoogleVisionService googleVisionService, AmazonRekognitionService amazonRekognitionService) {
+  private final DocumentVerificationService documentVerificationService;
+  private final ExecutorService recognitionExecutor;
+  private final MrzProperties mrzProperties;
+  private final StageTimer stageTimer;
+  private final StageTimingProperties stageTimingProperties;
+  private final Tracer tracer;
+  private final MultipartImageReader multipartImageReader;
+
+  public FaceRecognizeController(GoogleVisionService googleVisionService, DocumentVerificationService documentVerificationService,
+                                 @Qualifier("recognitionExecutor") ExecutorService recognitionExecutor, MrzProperties mrzProperties,
+                                 StageTimer stageTimer, StageTimingProperties stageTimingProperties, Tracer tracer,
+                                 MultipartImageReader multipartImageReader) {
     this.googleVisionService = googleVisionService;
-    this.amazonRekognitionService = amazonRekognitionService;
+    this.documentVerificationService = documentVerificationService;
+    this.recognitionExecutor = recognitionExecutor;
+    this.mrzProperties = mrzProperties;
+    this.stageTimer = stageTimer;
+    this.stageTimingProperties = stageTimingProperties;
+    this.tracer = tracer;
+    this.multipartImageReader = multipartImageReader;
   }
 
+  /**
+   * Verifies selfie and identity document images.
+   * Every stage starts as soon as its own inputs are ready and no servlet thread is held while waiting for
+   * the external APIs - the response is written when the returned future completes.
+   * With recognize.stage-timing.header enabled the latency of the stages is returned in the Server-Timing header.
+   * Each stage is traced as a child span of the request, see {@link StageTimings}.
+   * The selfie, id_front and id_back images are streamed from the multipart body and rejected as soon as
+   * their format, dimensions or size are not acceptable, see {@link MultipartImageReader}.
+   *
+   * @param mrzInput include the raw OCR text of the MRZ in the response, also accepted as a form field
+   */
   @PostMapping(path = "/collect")
-  public ResponseEntity<?> collectDocuments(
-    @RequestParam("selfie") MultipartFile selfie,
-    @RequestParam("id_front") MultipartFile idFront,
-    @RequestParam("id_back") MultipartFile idBack
+  public CompletableFuture<ResponseEntity<?>> collectDocuments(
+    HttpServletRequest request,
+    @RequestParam(name = "mrz_input", defaultValue = "false") boolean mrzInput
   ) throws Exception {
 
-    ImageComparisonWebInfo imageComparisonWebInfo = new ImageComparisonWebInfo();
+    StageTimings timings = new StageTimings(tracer);
+
+    // each upload is read once and shared by all requests below
+    long readStart = System.nanoTime();
+    MultipartImageReader.Upload upload;
+    try {
+      upload = multipartImageReader.read(request, "selfie", "id_front", "id_back");
+    } catch (UploadRejectedException e) {
+      stageTimer.record("collect.read", StageTimer.LOCAL, "multipart", StageTimer.REJECTED, System.nanoTime() - readStart);
+      throw e;
+    }
+    ImageBytes selfieBytes = upload.getImage("selfie");
+    ImageBytes idFrontBytes = upload.getImage("id_front");
+    ImageBytes idBackBytes = upload.getImage("id_back");
+    boolean includeMrzInput = mrzInput || Boolean.parseBoolean(upload.getField("mrz_input"));
 
     Image selfieImage = Image.newBuilder()
-                             .setContent(ByteString.copyFrom(selfie.getBytes()))
+                             .setContent(selfieBytes.asByteString())
                              .build();
     Image idFrontImage = Image.newBuilder()
-                              .setContent(ByteString.copyFrom(idFront.getBytes()))
+                              .setContent(idFrontBytes.asByteString())
                               .build();
     Image idBackImage = Image.newBuilder()
-                             .setContent(ByteString.copyFrom(idBack.getBytes()))
+                             .setContent(idBackBytes.asByteString())
                              .build();
-
-    // check if face detected
-
-
-    // label/face detection using Google Vision API
-    CompletableFuture<List<FaceAnnotation>> selfieFaceResolver = CompletableFuture.supplyAsync(() -> googleVisionService.resolveFaces(selfieImage));
-    CompletableFuture<List<ImageLabel>> idFrontResolver = CompletableFuture.supplyAsync(() -> googleVisionService.resolveLabels(idFrontImage));
-    CompletableFuture<List<ImageLabel>> idBackResolver = CompletableFuture.supplyAsync(() -> googleVisionService.resolveLabels(idBackImage));
-
-    CompletableFuture<Void> combinedFuture = CompletableFuture.allOf(selfieFaceResolver, idFrontResolver, idBackResolver);
-
-    // wait for all futures
-    combinedFuture.get();
+    stageTimer.record("collect.read", StageTimer.LOCAL, "multipart", StageTimer.SUCCESS, System.nanoTime() - readStart);
+    timings.add("read", readStart);
+
+    // in speculative mode the back side is OCRed right away, otherwise only when the front has no MRZ
+    boolean speculativeMrzRead = mrzProperties.isSpeculativeRead();
+    // document text comes with the labels unless only the located MRZ strip is sent for OCR
+    boolean textWithLabels = !mrzProperties.isRegionCrop();
+
+    // faces on the front decide whether the face comparison is worth a call
+    Feature.Type[] idFrontFeatures = textWithLabels
+      ? new Feature.Type[]{Feature.Type.LABEL_DETECTION, Feature.Type.FACE_DETECTION, Feature.Type.DOCUMENT_TEXT_DETECTION}
+      : new Feature.Type[]{Feature.Type.LABEL_DETECTION, Feature.Type.FACE_DETECTION};
+    Feature.Type[] idBackFeatures = textWithLabels && speculativeMrzRead
+      ? new Feature.Type[]{Feature.Type.LABEL_DETECTION, Feature.Type.DOCUMENT_TEXT_DETECTION}
+      : new Feature.Type[]{Feature.Type.LABEL_DETECTION};
+
+    // label/face/document text detection using Google Vision API - one request per image
+    CompletableFuture<ImageAnnotation> selfieResolver =
+      CompletableFuture.supplyAsync(() -> timings.time("vision_selfie", () -> googleVisionService.annotate(selfieImage, Feature.Type.FACE_DETECTION)), recognitionExecutor);
+    CompletableFuture<ImageAnnotation> idFrontResolver =
+      CompletableFuture.supplyAsync(() -> timings.time("vision_id_front", () -> googleVisionService.annotate(idFrontImage, idFrontFeatures)), recognitionExecutor);
+    CompletableFuture<ImageAnnotation> idBackResolver =
+      CompletableFuture.supplyAsync(() -> timings.time("vision_id_back", () -> googleVisionService.annotate(idBackImage, idBackFeatures)), recognitionExecutor);
 
     // check whether selfie is a real selfie
-    List<FaceAnnotation> selfieFaceResolverLabels = selfieFaceResolver.get();
-    selfieFaceResolverLabels.stream()
-                            .filter(faceAnnotation -> faceAnnotation.getDetectionConfidence() > 0.55)
-                            .findFirst()
-                            .ifPresent(faceAnnotation -> {
-                              imageComparisonWebInfo.setFaceDetected(true);
-                              imageComparisonWebInfo.setFaceScore(faceAnnotation.getDetectionConfidence());
-                              imageComparisonWebInfo.setSorrow(faceAnnotation.getSorrowLikelihood()
-                                                                             .name());
-                              imageComparisonWebInfo.setAnger(faceAnnotation.getAngerLikelihood()
-                                                                            .name());
-                              imageComparisonWebInfo.setJoy(faceAnnotation.getJoyLikelihood()
-                                                                          .name());
-                              imageComparisonWebInfo.setSurprise(faceAnnotation.getSurpriseLikelihood()
-                                                                               .name());
-                            });
-
+    CompletableFuture<Optional<FaceAnnotation>> selfieFace = selfieResolver.thenApply(annotation -> documentVerificationService.detectFace(annotation.getFaces()));
 
     // check whether other images contain identity documents
-
-    List<ImageLabel> idFrontLabels = idFrontResolver.get();
-    idFrontLabels.stream()
-                 .filter(imageLabel -> IDENTITY_DOCUMENT_LABEL.equalsIgnoreCase(imageLabel.getDescription()))
-                 .filter(imageLabel -> imageLabel.getScore() > 0.6)
-                 .findFirst()
-                 .ifPresent(imageLabel ->
-                   {
-                     imageComparisonWebInfo.setIdFrontDocumentDetected(true);
-                     imageComparisonWebInfo.setIdFrontDocumentScore(imageLabel.getScore());
-                   }
-                 );
-
-
-    List<ImageLabel> idBackLabels = idBackResolver.get();
-    idBackLabels.stream()
-                .filter(imageLabel -> IDENTITY_DOCUMENT_LABEL.equalsIgnoreCase(imageLabel.getDescription()))
-                .filter(imageLabel -> imageLabel.getScore() > 0.6)
-                .findFirst()
-                .ifPresent(imageLabel ->
-                  {
-                    imageComparisonWebInfo.setIdBackDocumentDetected(true);
-                    imageComparisonWebInfo.setIdBackDocumentScore(imageLabel.getScore());
+    CompletableFuture<Optional<ImageLabel>> idFrontDocument = idFrontResolver.thenApply(annotation -> documentVerificationService.detectIdentityDocument(annotation.getLabels()));
+    CompletableFuture<Optional<ImageLabel>> idBackDocument = idBackResolver.thenApply(annotation -> documentVerificationService.detectIdentityDocument(annotation.getLabels()));
+
+    // compare faces using AWS Rekognition - as soon as both the selfie face and the front document are confirmed
+    CompletableFuture<Optional<FaceComparisonResult>> faceComparison =
+      selfieFace.thenCombine(idFrontDocument, (face, document) -> face.isPresent() && document.isPresent())
+                .thenCompose(compare -> {
+                  if (!compare) {
+                    return CompletableFuture.completedFuture(Optional.<FaceComparisonResult>empty());
                   }
-                );
-
-
-    // compare faces using AWS Rekognition
-    if (imageComparisonWebInfo.isFaceDetected() && imageComparisonWebInfo.isIdFrontDocumentDetected()) {
-      com.amazonaws.services.rekognition.model.Image selfieAwsImage =
-        new com.amazonaws.services.rekognition.model.Image().withBytes(ByteBuffer.wrap(selfie.getBytes()));
-
-      com.amazonaws.services.rekognition.model.Image frontIdAwsImage =
-        new com.amazonaws.services.rekognition.model.Image().withBytes(ByteBuffer.wrap(idFront.getBytes()));
+                  // both resolvers are complete here as selfieFace and idFrontDocument depend on them,
+                  // no thread waits for Rekognition, the result arrives on its async client threads
+                  return timings.timeAsync("face_comparison", () -> documentVerificationService.compareFacesAsync(selfieBytes, selfieResolver.join().getFaces(),
+                                                                                                                  idFrontBytes, idFrontResolver.join().getFaces()))
+                                .exceptionally(FaceRecognizeController::faceComparisonFailed);
+                });
+
+    // detect and read MRZ using dummy algorithm - first MRZ found in order front, back
+    CompletableFuture<MrzData> mrzDataFront = readMrz(idFrontImage, idFrontResolver, idFrontDocument, textWithLabels, speculativeMrzRead, timings, "mrz_front");
+
+    CompletableFuture<MrzData> mrzDataBack = speculativeMrzRead
+      ? readMrz(idBackImage, idBackResolver, idBackDocument, textWithLabels, true, timings, "mrz_back")
+      : null;
+
+    CompletableFuture<Optional<MrzRead>> mrzData =
+      mrzDataFront.thenCompose(front -> {
+        // the back side is only considered when the front is a detected identity document without MRZ,
+        // idFrontDocument is already complete here as mrzDataFront depends on it
+        if (!front.isMissing() || !idFrontDocument.join().isPresent()) {
+          // only a separate back side OCR call still waiting for an executor thread is skipped,
+          // text detected together with the labels is already paid for and a started call runs to the end
+          if (mrzDataBack != null) {
+            mrzDataBack.cancel(false);
+          }
+          return CompletableFuture.completedFuture(front.isMissing() ? Optional.<MrzRead>empty() : Optional.of(new MrzRead(DocumentSide.FRONT, front)));
+        }
 
-      FaceComparisonResult faceComparisonResult = this.amazonRekognitionService.compareFaces(selfieAwsImage, frontIdAwsImage);
+        CompletableFuture<MrzData> back = mrzDataBack != null
+          ? mrzDataBack
+          : readMrz(idBackImage, idBackResolver, idBackDocument, false, false, timings, "mrz_back");
+
+        return back.thenApply(mrz -> mrz.isMissing() ? Optional.<MrzRead>empty() : Optional.of(new MrzRead(DocumentSide.BACK, mrz)));
+      });
+
+    return CompletableFuture.allOf(selfieFace, idFrontDocument, idBackDocument, faceComparison, mrzData)
+                            .thenApply(done -> {
+                              ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                              if (stageTimingProperties.isHeader()) {
+                                response.header(StageTimings.HEADER, timings.toHeaderValue());
+                              }
+                              return response.body(documentVerificationService.toWebInfo(selfieFace.join(), idFrontDocument.join(), idBackDocument.join(),
+                                                                                         faceComparison.join(), mrzData.join(), includeMrzInput));
+                            });
+  }
 
-      imageComparisonWebInfo.setFaceComparisonResult(faceComparisonResult.isSuccess());
-      imageComparisonWebInfo.setFaceComparisonScore(faceComparisonResult.getScore());
+  /**
+   * Reads MRZ of an image confirmed to be an identity document.
+   *
+   * @param textWithLabels document text was requested together with the labels, otherwise a separate OCR call is made
+   * @param eager start the separate OCR call right away instead of waiting for the document check,
+   *              cancelling the returned future skips the call if it has not started yet
+   * @param stage name of the MRZ reading in the timing breakdown
+   */
+  private CompletableFuture<MrzData> readMrz(Image image, CompletableFuture<ImageAnnotation> resolver, CompletableFuture<Optional<ImageLabel>> document,
+                                             boolean textWithLabels, boolean eager, StageTimings timings, String stage) {
+    if (textWithLabels) {
+      return resolver.thenCombineAsync(document, (annotation, label) -> label.isPresent()
+        ? timings.time(stage, () -> googleVisionService.detectMrz(annotation.getTextBlocks()))
+        : missingMrz(), recognitionExecutor);
     }
-
-    // detect and read MRZ using dummy algorithm
-    if (imageComparisonWebInfo.isIdFrontDocumentDetected()) {
-      MrzData mrzDataFront = this.googleVisionService.detectMrzForPassportOrFrDocId(idFrontImage);
-
-      if (!mrzDataFront.isMissing()) {
-        imageComparisonWebInfo.setMrz(mrzDataFront.toString());
-      } else if (imageComparisonWebInfo.isIdBackDocumentDetected()) {
-        MrzData mrzDataBack = this.googleVisionService.detectMrzForPassportOrFrDocId(idBackImage);
-
-        if (!mrzDataBack.isMissing()) {
-          imageComparisonWebInfo.setMrz(mrzDataBack.toString());
+    if (eager) {
+      CompletableFuture<MrzData> ocr =
+        CompletableFuture.supplyAsync(() -> timings.time(stage, () -> googleVisionService.detectMrzForPassportOrFrDocId(image)), recognitionExecutor);
+      CompletableFuture<MrzData> mrzData = ocr.thenCombine(document, (mrz, label) -> label.isPresent() ? mrz : missingMrz());
+      // cancelling the result cancels the OCR task too, a task that has not started yet then never calls Vision
+      mrzData.whenComplete((mrz, e) -> {
+        if (mrzData.isCancelled()) {
+          ocr.cancel(false);
         }
-      }
+      });
+      return mrzData;
+    }
+    return document.thenApplyAsync(label -> label.isPresent()
+      ? timings.time(stage, () -> googleVisionService.detectMrzForPassportOrFrDocId(image))
+      : missingMrz(), recognitionExecutor);
+  }
+
+  // a failed comparison is reported with its reason, so a throttled or timed out call does not read as faces not matching
+  private static Optional<FaceComparisonResult> faceComparisonFailed(Throwable e) {
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (cause instanceof FaceComparisonException) {
+      log.warn("Face comparison failed: {}", cause.getMessage());
+      return Optional.of(FaceComparisonResult.failed(((FaceComparisonException) cause).getReason().name()));
     }
-    return ResponseEntity.ok()
-                         .body(imageComparisonWebInfo);
+    log.warn("Face comparison failed", cause);
+    return Optional.of(FaceComparisonResult.failed(FaceComparisonException.Reason.SERVICE_ERROR.name()));
+  }
+
+  private static MrzData missingMrz() {
+    return MrzData.builder().missing(true).build();
   }
 }
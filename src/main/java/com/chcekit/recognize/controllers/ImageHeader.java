@@ -0,0 +1,129 @@
+package com.chcekit.recognize.controllers;
+
+/**
+ * Format and dimensions of an image read from its leading bytes, without decoding the image.
+ * Only JPEG and PNG are recognized, the formats accepted by both Vision and Rekognition.
+ */
+final class ImageHeader {
+
+  static final String JPEG = "jpeg";
+  static final String PNG = "png";
+
+  private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8};
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final byte[] PNG_IHDR = {'I', 'H', 'D', 'R'};
+
+  private static final int JPEG_START_OF_SCAN = 0xDA;
+  private static final int JPEG_END_OF_IMAGE = 0xD9;
+
+  private final String format;
+  private final int width;
+  private final int height;
+
+  private ImageHeader(String format, int width, int height) {
+    this.format = format;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * @param data leading bytes of the image
+   * @param length number of bytes of data read so far
+   * @return header of the image, or null if more bytes are needed to find it
+   * @throws UploadRejectedException if the bytes do not start a JPEG or PNG image
+   */
+  static ImageHeader parse(byte[] data, int length) {
+    if (startsWith(data, length, JPEG_SIGNATURE)) {
+      return length < JPEG_SIGNATURE.length ? null : parseJpeg(data, length);
+    }
+    if (startsWith(data, length, PNG_SIGNATURE)) {
+      return length < PNG_SIGNATURE.length ? null : parsePng(data, length);
+    }
+    throw unsupported("not a JPEG or PNG image");
+  }
+
+  // the frame header (SOFn) follows any number of APPn, DQT, DHT... segments
+  private static ImageHeader parseJpeg(byte[] data, int length) {
+    int offset = JPEG_SIGNATURE.length;
+    while (offset + 4 <= length) {
+      if ((data[offset] & 0xFF) != 0xFF) {
+        throw unsupported("corrupt JPEG segment at byte " + offset);
+      }
+      int marker = data[offset + 1] & 0xFF;
+      if (marker == 0xFF) {
+        // fill byte before a marker
+        offset++;
+        continue;
+      }
+      if (marker == JPEG_START_OF_SCAN || marker == JPEG_END_OF_IMAGE) {
+        throw unsupported("JPEG without a frame header");
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+        // markers without a segment
+        offset += 2;
+        continue;
+      }
+      if (isStartOfFrame(marker)) {
+        // length, sample precision, height, width
+        return offset + 9 > length ? null : new ImageHeader(JPEG, unsignedShort(data, offset + 7), unsignedShort(data, offset + 5));
+      }
+      int segmentLength = unsignedShort(data, offset + 2);
+      if (segmentLength < 2) {
+        throw unsupported("corrupt JPEG segment at byte " + offset);
+      }
+      offset += 2 + segmentLength;
+    }
+    return null;
+  }
+
+  // IHDR has to be the first chunk
+  private static ImageHeader parsePng(byte[] data, int length) {
+    if (length < 24) {
+      return null;
+    }
+    for (int i = 0; i < PNG_IHDR.length; i++) {
+      if (data[12 + i] != PNG_IHDR[i]) {
+        throw unsupported("PNG without a header chunk");
+      }
+    }
+    return new ImageHeader(PNG, signedInt(data, 16), signedInt(data, 20));
+  }
+
+  // SOF0-SOF15 except DHT, JPG and DAC which share the range
+  private static boolean isStartOfFrame(int marker) {
+    return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+  }
+
+  private static boolean startsWith(byte[] data, int length, byte[] signature) {
+    for (int i = 0; i < Math.min(length, signature.length); i++) {
+      if (data[i] != signature[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int unsignedShort(byte[] data, int offset) {
+    return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+  }
+
+  private static int signedInt(byte[] data, int offset) {
+    return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+  }
+
+  private static UploadRejectedException unsupported(String message) {
+    return new UploadRejectedException(UploadRejectedException.Reason.UNSUPPORTED_IMAGE, message);
+  }
+
+  String getFormat() {
+    return format;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+}
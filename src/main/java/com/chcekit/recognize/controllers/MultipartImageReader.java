@@ -0,0 +1,189 @@
+package com.chcekit.recognize.controllers;
+
+import com.chcekit.recognize.config.UploadProperties;
+import com.chcekit.recognize.controllers.UploadRejectedException.Reason;
+import com.chcekit.recognize.model.ImageBytes;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads image parts straight from the multipart request stream, nothing is buffered by the container.
+ * Format and dimensions of an image are checked as soon as its header has arrived and the size limits while it is read,
+ * so a bad upload is rejected without reading the rest of it. Memory of a request is bounded by recognize.upload.max-request-bytes.
+ * Requests already parsed by a multipart resolver (spring.servlet.multipart.enabled) get the same checks on the buffered parts.
+ */
+@Component
+public class MultipartImageReader {
+
+  private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+  // form fields are short flags
+  private static final int MAX_FIELD_BYTES = 1024;
+
+  private final UploadProperties uploadProperties;
+
+  public MultipartImageReader(UploadProperties uploadProperties) {
+    this.uploadProperties = uploadProperties;
+  }
+
+  /**
+   * @param imageParts names of the required image parts
+   * @throws UploadRejectedException if the request or one of the images is not acceptable
+   */
+  public Upload read(HttpServletRequest request, String... imageParts) throws IOException {
+    if (request.getContentLengthLong() > uploadProperties.getMaxRequestBytes()) {
+      throw new UploadRejectedException(Reason.TOO_LARGE, "request of " + request.getContentLengthLong() + " bytes, the limit is "
+        + uploadProperties.getMaxRequestBytes());
+    }
+
+    Upload upload = new Upload(Arrays.asList(imageParts));
+    if (request instanceof MultipartHttpServletRequest) {
+      for (Map.Entry<String, MultipartFile> part : ((MultipartHttpServletRequest) request).getFileMap().entrySet()) {
+        try (InputStream inputStream = part.getValue().getInputStream()) {
+          readPart(upload, part.getKey(), false, inputStream);
+        }
+      }
+    } else {
+      if (!ServletFileUpload.isMultipartContent(request)) {
+        throw new UploadRejectedException(Reason.MALFORMED, "multipart/form-data request expected");
+      }
+      try {
+        FileItemIterator parts = new ServletFileUpload().getItemIterator(request);
+        while (parts.hasNext()) {
+          FileItemStream part = parts.next();
+          try (InputStream inputStream = part.openStream()) {
+            readPart(upload, part.getFieldName(), part.isFormField(), inputStream);
+          }
+        }
+      } catch (FileUploadException e) {
+        throw new UploadRejectedException(Reason.MALFORMED, e.getMessage());
+      }
+    }
+
+    for (String name : imageParts) {
+      if (!upload.images.containsKey(name)) {
+        throw new UploadRejectedException(Reason.MISSING_PART, "no " + name + " image");
+      }
+    }
+    return upload;
+  }
+
+  // parts are told apart by name, clients do not always send a file name with the images
+  private void readPart(Upload upload, String name, boolean formField, InputStream inputStream) throws IOException {
+    if (upload.imageParts.contains(name)) {
+      if (upload.images.containsKey(name)) {
+        throw new UploadRejectedException(Reason.UNEXPECTED_PART, "repeated " + name + " image");
+      }
+      ImageBytes image = readImage(name, inputStream, uploadProperties.getMaxRequestBytes() - upload.bytes);
+      upload.images.put(name, image);
+      upload.bytes += image.size();
+    } else if (formField) {
+      String value = readField(name, inputStream);
+      upload.fields.put(name, value);
+      upload.bytes += value.length();
+      if (upload.bytes > uploadProperties.getMaxRequestBytes()) {
+        throw new UploadRejectedException(Reason.TOO_LARGE, "request over " + uploadProperties.getMaxRequestBytes() + " bytes");
+      }
+    } else {
+      throw new UploadRejectedException(Reason.UNEXPECTED_PART, "unexpected file " + name);
+    }
+  }
+
+  private ImageBytes readImage(String name, InputStream inputStream, long requestBytesLeft) throws IOException {
+    long limit = Math.min(uploadProperties.getMaxPartBytes(), requestBytesLeft);
+    // one byte over the limit is enough to know it is crossed
+    byte[] buffer = new byte[(int) Math.min(INITIAL_BUFFER_BYTES, limit + 1)];
+    int length = 0;
+    ImageHeader header = null;
+
+    int read;
+    while ((read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length > limit) {
+        throw new UploadRejectedException(Reason.TOO_LARGE, name + " image over " + limit + " bytes"
+          + (limit < uploadProperties.getMaxPartBytes() ? " left of the request limit" : ""));
+      }
+      if (header == null) {
+        header = ImageHeader.parse(buffer, length);
+        if (header != null) {
+          checkDimensions(name, header);
+        } else if (length >= uploadProperties.getHeaderScanBytes()) {
+          throw new UploadRejectedException(Reason.UNSUPPORTED_IMAGE, "no image header in the first " + length + " bytes of " + name);
+        }
+      }
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, limit + 1));
+      }
+    }
+
+    if (header == null) {
+      throw new UploadRejectedException(Reason.UNSUPPORTED_IMAGE, name + " image is empty or truncated");
+    }
+    return ImageBytes.of(buffer, length);
+  }
+
+  private void checkDimensions(String name, ImageHeader header) {
+    int minDimension = uploadProperties.getMinImageDimension();
+    if (header.getWidth() < minDimension || header.getHeight() < minDimension) {
+      throw new UploadRejectedException(Reason.INVALID_DIMENSIONS, name + " image of " + header.getWidth() + "x" + header.getHeight()
+        + ", at least " + minDimension + " pixels in each dimension needed");
+    }
+    if ((long) header.getWidth() * header.getHeight() > uploadProperties.getMaxImagePixels()) {
+      throw new UploadRejectedException(Reason.INVALID_DIMENSIONS, name + " image of " + header.getWidth() + "x" + header.getHeight()
+        + ", at most " + uploadProperties.getMaxImagePixels() + " pixels accepted");
+    }
+  }
+
+  private static String readField(String name, InputStream inputStream) throws IOException {
+    byte[] buffer = new byte[MAX_FIELD_BYTES + 1];
+    int length = 0;
+    int read;
+    while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+    }
+    if (length > MAX_FIELD_BYTES) {
+      throw new UploadRejectedException(Reason.TOO_LARGE, "field " + name + " over " + MAX_FIELD_BYTES + " bytes");
+    }
+    return new String(buffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Images and form fields of a request.
+   */
+  public static final class Upload {
+
+    private final List<String> imageParts;
+    private final Map<String, ImageBytes> images = new HashMap<>();
+    private final Map<String, String> fields = new HashMap<>();
+    private long bytes;
+
+    private Upload(List<String> imageParts) {
+      this.imageParts = imageParts;
+    }
+
+    public ImageBytes getImage(String name) {
+      return images.get(name);
+    }
+
+    /**
+     * @return value of a form field sent in the multipart body, null if it was not sent
+     */
+    public String getField(String name) {
+      return fields.get(name);
+    }
+  }
+}
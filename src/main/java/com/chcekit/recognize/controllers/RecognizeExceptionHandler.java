@@ -0,0 +1,39 @@
+package com.chcekit.recognize.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestControllerAdvice
+@Slf4j
+public class RecognizeExceptionHandler {
+
+  private static final String RETRY_AFTER_SECONDS = "1";
+
+  /**
+   * Recognition executor is saturated - ask the client to retry later instead of queueing without bound.
+   */
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<?> handleRejectedExecution(RejectedExecutionException e) {
+    log.warn("Recognition executor saturated: {}", e.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                         .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                         .build();
+  }
+
+  /**
+   * Upload rejected while it was read - the rest of the body is left unread, the client gets the reason.
+   */
+  @ExceptionHandler(UploadRejectedException.class)
+  public ResponseEntity<?> handleUploadRejected(UploadRejectedException e) {
+    log.info("Upload rejected: {}", e.getMessage());
+    return ResponseEntity.status(e.getReason().getStatus())
+                         .body(Collections.singletonMap("error", e.getMessage()));
+  }
+}
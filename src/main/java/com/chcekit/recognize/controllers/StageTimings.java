@@ -0,0 +1,98 @@
+package com.chcekit.recognize.controllers;
+
+import brave.Span;
+import brave.Tracer;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Latency breakdown of a single request, written as a Server-Timing header value.
+ * Every stage is also traced as a child span of the request span, captured when the timings are created,
+ * so the branches of the fan-out are parented correctly whichever thread they run on.
+ * Calls made by a stage, e.g. the Vision and Rekognition spans, become children of the stage span.
+ * Stages run on different threads, so they are collected in completion order.
+ */
+final class StageTimings {
+
+  static final String HEADER = "Server-Timing";
+
+  private final long start = System.nanoTime();
+  private final Queue<String> entries = new ConcurrentLinkedQueue<>();
+
+  private final Tracer tracer;
+  private final Span requestSpan;
+
+  StageTimings(Tracer tracer) {
+    this.tracer = tracer;
+    this.requestSpan = tracer.currentSpan();
+  }
+
+  @SuppressWarnings("try")
+  <T> T time(String stage, Supplier<T> call) {
+    long stageStart = System.nanoTime();
+    Span span = startSpan(stage);
+    try (Tracer.SpanInScope ignored = tracer.withSpanInScope(span)) {
+      return call.get();
+    } catch (RuntimeException e) {
+      span.error(e);
+      throw e;
+    } finally {
+      span.finish();
+      add(stage, stageStart);
+    }
+  }
+
+  /**
+   * @return future completing after the stage is recorded
+   */
+  @SuppressWarnings("try")
+  <T> CompletableFuture<T> timeAsync(String stage, Supplier<CompletableFuture<T>> call) {
+    long stageStart = System.nanoTime();
+    Span span = startSpan(stage);
+    CompletableFuture<T> future;
+    try (Tracer.SpanInScope ignored = tracer.withSpanInScope(span)) {
+      future = call.get();
+    } catch (RuntimeException e) {
+      span.error(e).finish();
+      throw e;
+    }
+    return future.whenComplete((result, e) -> {
+      if (e != null) {
+        span.error(e);
+      }
+      span.finish();
+      add(stage, stageStart);
+    });
+  }
+
+  /**
+   * Adds a stage timed by the caller.
+   */
+  void add(String stage, long stageStart) {
+    entries.add(entry(stage, stageStart));
+  }
+
+  /**
+   * @return e.g. read;dur=3.2, vision_selfie;dur=412.7, total;dur=905.1
+   */
+  String toHeaderValue() {
+    StringBuilder value = new StringBuilder();
+    for (String entry : entries) {
+      value.append(entry).append(", ");
+    }
+    return value.append(entry("total", start)).toString();
+  }
+
+  private Span startSpan(String stage) {
+    Span span = requestSpan != null ? tracer.newChild(requestSpan.context()) : tracer.nextSpan();
+    return span.name(stage).start();
+  }
+
+  private static String entry(String stage, long stageStart) {
+    return String.format(Locale.ROOT, "%s;dur=%.1f", stage, (System.nanoTime() - stageStart) / 1_000_000.0);
+  }
+}
@@ -0,0 +1,47 @@
+package com.chcekit.recognize.controllers;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Upload rejected while it was read, before any recognition call. The reason decides the response status.
+ */
+public class UploadRejectedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum Reason {
+    // not a multipart request or its multipart structure is broken
+    MALFORMED(HttpStatus.BAD_REQUEST),
+    // a required image part is missing
+    MISSING_PART(HttpStatus.BAD_REQUEST),
+    // an image part is repeated or a file part is not one of the expected images
+    UNEXPECTED_PART(HttpStatus.BAD_REQUEST),
+    // content is neither JPEG nor PNG
+    UNSUPPORTED_IMAGE(HttpStatus.UNSUPPORTED_MEDIA_TYPE),
+    // image is too small for face comparison or too big to decode
+    INVALID_DIMENSIONS(HttpStatus.BAD_REQUEST),
+    // a part or the whole request is over the configured size limit
+    TOO_LARGE(HttpStatus.PAYLOAD_TOO_LARGE);
+
+    private final HttpStatus status;
+
+    Reason(HttpStatus status) {
+      this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+      return status;
+    }
+  }
+
+  private final Reason reason;
+
+  public UploadRejectedException(Reason reason, String message) {
+    super(reason + ": " + message);
+    this.reason = reason;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+}
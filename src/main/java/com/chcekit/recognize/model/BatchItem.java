@@ -0,0 +1,15 @@
+package com.chcekit.recognize.model;
+
+import lombok.Data;
+
+/**
+ * Document set of one customer in a batch verification manifest.
+ * Paths are relative to the configured batch base directory.
+ */
+@Data
+public class BatchItem {
+  private String id;
+  private String selfie;
+  private String idFront;
+  private String idBack;
+}
@@ -0,0 +1,12 @@
+package com.chcekit.recognize.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+  public final String id;
+  public final ImageComparisonWebInfo result;
+  public final String error;
+}
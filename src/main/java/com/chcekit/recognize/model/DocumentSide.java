@@ -0,0 +1,6 @@
+package com.chcekit.recognize.model;
+
+public enum DocumentSide {
+  FRONT,
+  BACK
+}
@@ -6,4 +6,23 @@ import lombok.Data;
 public class FaceComparisonResult {
     public final boolean success;
     public final float score;
+    // reason the comparison could not be made, e.g. THROTTLED or TIMEOUT, null if it was made
+    public final String failure;
+
+    public FaceComparisonResult(boolean success, float score) {
+        this(success, score, null);
+    }
+
+    private FaceComparisonResult(boolean success, float score, String failure) {
+        this.success = success;
+        this.score = score;
+        this.failure = failure;
+    }
+
+    /**
+     * @param failure reason the comparison could not be made
+     */
+    public static FaceComparisonResult failed(String failure) {
+        return new FaceComparisonResult(false, -1, failure);
+    }
 }
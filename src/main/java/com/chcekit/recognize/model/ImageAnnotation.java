@@ -0,0 +1,19 @@
+package com.chcekit.recognize.model;
+
+import com.google.cloud.vision.v1.FaceAnnotation;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Result of a single multi-feature Vision API call for one image.
+ * Lists are empty when the corresponding feature was not requested or nothing was detected.
+ */
+@Data
+public class ImageAnnotation {
+  public final List<ImageLabel> labels;
+  public final List<FaceAnnotation> faces;
+  public final List<String> textBlocks;
+  // characters of the OCR text, text blocks keep the Vision annotation they are built from
+  public final int textLength;
+}
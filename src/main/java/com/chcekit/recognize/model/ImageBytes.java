@@ -0,0 +1,70 @@
+package com.chcekit.recognize.model;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uploaded image read exactly once and shared by the Vision and Rekognition requests without further copies.
+ * Streamed uploads keep the buffer they were read into, uploads spilled to a temp file by a multipart resolver
+ * are memory mapped instead of copied to the heap.
+ */
+public final class ImageBytes {
+
+  private final ByteBuffer content;
+
+  private ImageBytes(ByteBuffer content) {
+    this.content = content.asReadOnlyBuffer();
+  }
+
+  public static ImageBytes of(MultipartFile file) throws IOException {
+    try (InputStream inputStream = file.getInputStream()) {
+      if (inputStream instanceof FileInputStream) {
+        // the mapping stays valid after the channel is closed
+        FileChannel channel = ((FileInputStream) inputStream).getChannel();
+        return new ImageBytes(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+    return new ImageBytes(ByteBuffer.wrap(file.getBytes()));
+  }
+
+  /**
+   * @param content buffer the image was read into, not copied
+   * @param length number of image bytes at the start of the buffer
+   */
+  public static ImageBytes of(byte[] content, int length) {
+    return new ImageBytes(ByteBuffer.wrap(content, 0, length));
+  }
+
+  public static ImageBytes of(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new ImageBytes(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * @return image content for Vision API requests, backed by the same memory
+   */
+  public ByteString asByteString() {
+    return UnsafeByteOperations.unsafeWrap(content.duplicate());
+  }
+
+  /**
+   * @return read-only view of the image content for Rekognition requests, with its own position
+   */
+  public ByteBuffer asByteBuffer() {
+    return content.duplicate();
+  }
+
+  public int size() {
+    return content.remaining();
+  }
+}
@@ -17,5 +17,8 @@ public class ImageComparisonWebInfo {
 
   private boolean faceComparisonResult;
   private float faceComparisonScore;
-  private String mrz = "";
+  // why the faces could not be compared, e.g. THROTTLED or TIMEOUT, null if they were compared
+  private String faceComparisonFailure;
+  private MrzData mrz;
+  private DocumentSide mrzSide;
 }
@@ -1,5 +1,6 @@
 package com.chcekit.recognize.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.neovisionaries.i18n.CountryCode;
 import lombok.Builder;
 import lombok.Getter;
@@ -9,9 +10,10 @@ import org.apache.commons.lang3.StringUtils;
 import java.util.List;
 import java.util.stream.Collectors;
 
-@Builder
+@Builder(toBuilder = true)
 @Getter
-@ToString
+@ToString(exclude = {"passportCountry", "surnameCapital", "givenNamesCapital"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MrzData {
   // stores original MRZ data extracted from the document.
   private final String input;
@@ -35,16 +37,39 @@ public class MrzData {
   private final String validMonth;
   private final String validDay;
 
-    public String getPassportCountry() {
-        final CountryCode country = CountryCode.getByCode(passportCountryCode, false);
-        return country != null ? country.getName() : "";
-    }
+  // check digit verification of the fields, null if the field was not read
+  private final MrzFieldConfidence documentNumberConfidence;
+  private final MrzFieldConfidence birthDateConfidence;
+  private final MrzFieldConfidence validDateConfidence;
+  private final MrzFieldConfidence compositeConfidence;
 
-  public String getSurnameCapital() {
-        return StringUtils.capitalize(surname == null ? null : surname.toLowerCase());
-    }
+  // derived values are computed on first access only
+  @Getter(lazy = true)
+  private final String passportCountry = passportCountry();
 
-    public List<String> getGivenNamesCapital() {
-        return givenNames == null ? null : givenNames.stream().map(String::toLowerCase).map(StringUtils::capitalize).collect(Collectors.toList());
-    }
+  @Getter(lazy = true)
+  private final String surnameCapital = surnameCapital();
+
+  @Getter(lazy = true)
+  private final List<String> givenNamesCapital = givenNamesCapital();
+
+  /**
+   * @return copy of the data without the raw OCR text
+   */
+  public MrzData withoutInput() {
+    return toBuilder().input(null).build();
+  }
+
+  private String passportCountry() {
+    final CountryCode country = CountryCode.getByCode(passportCountryCode, false);
+    return country != null ? country.getName() : "";
+  }
+
+  private String surnameCapital() {
+    return StringUtils.capitalize(surname == null ? null : surname.toLowerCase());
+  }
+
+  private List<String> givenNamesCapital() {
+    return givenNames == null ? null : givenNames.stream().map(String::toLowerCase).map(StringUtils::capitalize).collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,15 @@
+package com.chcekit.recognize.model;
+
+/**
+ * How much an MRZ field protected by a check digit can be trusted.
+ */
+public enum MrzFieldConfidence {
+  // check digit matches the field as read by OCR
+  VALID,
+  // check digit matches after fixing common OCR confusions, e.g. O read instead of 0
+  CORRECTED,
+  // check digit is missing, the text ended before it
+  UNCHECKED,
+  // check digit does not match or the value is impossible, e.g. the 16th month
+  INVALID
+}
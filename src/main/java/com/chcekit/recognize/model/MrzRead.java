@@ -0,0 +1,12 @@
+package com.chcekit.recognize.model;
+
+import lombok.Data;
+
+/**
+ * MRZ read from one side of an identity document.
+ */
+@Data
+public class MrzRead {
+  private final DocumentSide side;
+  private final MrzData mrzData;
+}
@@ -0,0 +1,179 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.RateLimitProperties;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Keeps calls of one external API operation within its quota.
+ * A token bucket caps the request rate and an AIMD limit caps concurrent calls:
+ * the limit grows by one after a window of successful calls and shrinks multiplicatively when the API reports overload.
+ * Calls wait a short time for a slot and a token, then they are rejected with {@link RejectedExecutionException}.
+ * Published as recognition.limiter.* metrics tagged with the limiter name.
+ */
+public class AdaptiveLimiter {
+
+    private final String name;
+    private final boolean enabled;
+    private final RateLimiter rateLimiter;
+    private final long maxWaitNanos;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final Predicate<Throwable> overload;
+
+    private final Counter rejected;
+    private final Counter overloaded;
+    private final Timer waitTime;
+
+    // guarded by this
+    private double limit;
+    private int inFlight;
+
+    /**
+     * @param overload tells whether a failure means the API is overloaded or throttles us
+     */
+    public AdaptiveLimiter(String name, RateLimitProperties properties, RateLimitProperties.Limit limit,
+                           Predicate<Throwable> overload, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.enabled = properties.isEnabled();
+        this.rateLimiter = RateLimiter.create(limit.getPermitsPerSecond());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(limit.getMaxWaitMillis() > 0 ? limit.getMaxWaitMillis() : properties.getMaxWaitMillis());
+        this.minLimit = limit.getMinConcurrency();
+        this.maxLimit = limit.getMaxConcurrency();
+        this.backoffRatio = limit.getBackoffRatio();
+        this.overload = overload;
+        this.limit = limit.getInitialConcurrency();
+
+        Tags tags = Tags.of("limiter", name);
+        rejected = meterRegistry.counter("recognition.limiter.rejected", tags);
+        overloaded = meterRegistry.counter("recognition.limiter.overloaded", tags);
+        waitTime = meterRegistry.timer("recognition.limiter.wait", tags);
+        meterRegistry.gauge("recognition.limiter.limit", tags, this, AdaptiveLimiter::getLimit);
+        meterRegistry.gauge("recognition.limiter.in.flight", tags, this, AdaptiveLimiter::getInFlight);
+    }
+
+    /**
+     * Runs a blocking call within the limits.
+     *
+     * @param permits rate tokens the call takes, e.g. number of images in a batch
+     */
+    public <T> T call(int permits, Supplier<T> call) {
+        Permit permit = acquire(permits);
+        try {
+            T result = call.get();
+            permit.release(null);
+            return result;
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a concurrency slot and rate tokens for a call, the returned permit has to be released when the call completes.
+     *
+     * @throws RejectedExecutionException if they are not available within the max wait time
+     */
+    public Permit acquire(int permits) {
+        if (!enabled) {
+            return new Permit(false);
+        }
+
+        // the slot is taken first, a rate token cannot be given back when no slot frees up in time
+        long start = System.nanoTime();
+        long deadline = start + maxWaitNanos;
+        try {
+            if (!acquireSlot(deadline)) {
+                rejected.increment();
+                throw new RejectedExecutionException(name + " concurrency limit reached");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(name + " interrupted while waiting", e);
+        }
+
+        if (!rateLimiter.tryAcquire(permits, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            returnSlot();
+            rejected.increment();
+            throw new RejectedExecutionException(name + " rate limit reached");
+        }
+
+        waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(true);
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized boolean acquireSlot(long deadline) throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlight++;
+        return true;
+    }
+
+    // slot of a call that was not made, the limit is not adjusted
+    private synchronized void returnSlot() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private synchronized void releaseSlot(Throwable failure) {
+        inFlight--;
+        if (failure == null) {
+            // additive increase, one per limit calls
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        } else if (overload.test(failure)) {
+            overloaded.increment();
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Slot of a call in progress.
+     */
+    public final class Permit {
+
+        private final boolean slot;
+        private boolean released;
+
+        private Permit(boolean slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * @param failure exception the call failed with, null if it succeeded
+         */
+        public void release(Throwable failure) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            if (slot) {
+                releaseSlot(failure);
+            }
+        }
+    }
+}
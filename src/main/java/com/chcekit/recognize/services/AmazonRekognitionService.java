@@ -1,57 +1,230 @@
 package com.chcekit.recognize.services;
 
+import brave.Span;
+import brave.Tracer;
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.rekognition.AmazonRekognition;
-import com.amazonaws.services.rekognition.AmazonRekognitionClientBuilder;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.rekognition.AmazonRekognitionAsync;
 import com.amazonaws.services.rekognition.model.*;
 import com.chcekit.recognize.model.FaceComparisonResult;
+import com.google.common.cache.Cache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
+@Slf4j
 public class AmazonRekognitionService {
 
-  private AmazonRekognition rekognitionClient;
+  private final Cache<String, FaceComparisonResult> resultCache;
+  private final ImagePreprocessingService imagePreprocessingService;
+  private final AmazonRekognitionAsync rekognitionClient;
+  private final AdaptiveLimiter limiter;
+  private final StageTimer stageTimer;
+  private final Tracer tracer;
+  private final ExecutorService recognitionExecutor;
 
-  @PostConstruct
-  public void initIt() throws Exception {
-    try {
+  public AmazonRekognitionService(Cache<String, FaceComparisonResult> resultCache, ImagePreprocessingService imagePreprocessingService,
+                                  AmazonRekognitionAsync rekognitionClient, RecognitionLimiters recognitionLimiters, StageTimer stageTimer,
+                                  Tracer tracer, @Qualifier("recognitionExecutor") ExecutorService recognitionExecutor) {
+    this.resultCache = resultCache;
+    this.imagePreprocessingService = imagePreprocessingService;
+    this.rekognitionClient = rekognitionClient;
+    this.limiter = recognitionLimiters.rekognition();
+    this.stageTimer = stageTimer;
+    this.tracer = tracer;
+    this.recognitionExecutor = recognitionExecutor;
+  }
+
+  /**
+   * Compares the largest face of the source image with faces of the target image.
+   * Results of successful calls are cached by content of both images.
+   * Downscaling and the call are timed as the rekognition.preprocess and rekognition.compare-faces stages,
+   * the outcome of a failed call is its {@link FaceComparisonException.Reason}.
+   * Calls are traced as rekognition.compare-faces spans with the sizes of the images sent.
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the Rekognition rate limiter rejects the call
+   */
+  public FaceComparisonResult compareFaces(Image sourceImage, Image targetImage) {
+    String cacheKey = cacheKey(sourceImage, targetImage);
+    if (cacheKey == null) {
+      return doCompareFaces(sourceImage, targetImage);
+    }
 
-      rekognitionClient = AmazonRekognitionClientBuilder
-        .standard()
-        .withRegion(Regions.EU_WEST_1)
-        .withCredentials(new ProfileCredentialsProvider())
-        .build();
+    FaceComparisonResult cached = resultCache.getIfPresent(cacheKey);
+    if (cached != null) {
+      return cached;
+    }
 
-    } catch (Exception e) {
-      throw new AmazonClientException("Cannot load the credentials from the credential profiles file. "
-        + "Please make sure that your credentials file is at the correct "
-        + "location (/Users/userid.aws/credentials), and is in a valid format.", e);
+    FaceComparisonResult result = doCompareFaces(sourceImage, targetImage);
+    // do not cache failed calls, they should be retried
+    if (result.getScore() >= 0) {
+      resultCache.put(cacheKey, result);
     }
+    return result;
   }
 
-  public FaceComparisonResult compareFaces(Image sourceImage, Image targetImage) {
+  /**
+   * Non-blocking variant of {@link #compareFaces(Image, Image)}, the call runs on the threads of the async Rekognition client.
+   * Downscaling and the wait for a rate limiter permit run on the recognition executor, not on the calling thread,
+   * which is often the thread completing a Vision call. They are kept off the client threads,
+   * which could otherwise all wait for permits held by calls queued behind them.
+   * A failed call completes the future with {@link FaceComparisonException} carrying the reason of the failure,
+   * a call rejected by the rate limiter or the recognition executor fails as {@link FaceComparisonException.Reason#THROTTLED}.
+   * The returned future fails instead of this method throwing, also when the client cannot submit the call.
+   */
+  public CompletableFuture<FaceComparisonResult> compareFacesAsync(Image sourceImage, Image targetImage) {
+    String cacheKey = cacheKey(sourceImage, targetImage);
+    if (cacheKey != null) {
+      FaceComparisonResult cached = resultCache.getIfPresent(cacheKey);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+
+    // the span is started in the context of the caller and ends on a thread of the async client, it is not put in scope
+    Span span = compareFacesSpan();
+    CompletableFuture<FaceComparisonResult> comparison = new CompletableFuture<>();
+    try {
+      recognitionExecutor.execute(() -> submitCompareFaces(sourceImage, targetImage, cacheKey, span, comparison));
+    } catch (RejectedExecutionException e) {
+      recordCompareFaces(StageTimer.REJECTED, System.nanoTime());
+      span.error(e).finish();
+      comparison.completeExceptionally(new FaceComparisonException(FaceComparisonException.Reason.THROTTLED, e));
+    }
+    return comparison;
+  }
 
-    CompareFacesRequest compareFacesRequest = new CompareFacesRequest()
-      .withSourceImage(sourceImage)
-      .withTargetImage(targetImage);
+  private void submitCompareFaces(Image sourceImage, Image targetImage, String cacheKey, Span span, CompletableFuture<FaceComparisonResult> comparison) {
+    CompareFacesRequest compareFacesRequest;
+    try {
+      compareFacesRequest = compareFacesRequest(sourceImage, targetImage, span);
+    } catch (RuntimeException e) {
+      span.error(e).finish();
+      comparison.completeExceptionally(e);
+      return;
+    }
 
+    long start = System.nanoTime();
+    AdaptiveLimiter.Permit permit;
     try {
-      CompareFacesResult result = rekognitionClient.compareFaces(compareFacesRequest);
+      permit = limiter.acquire(1);
+    } catch (RejectedExecutionException e) {
+      recordCompareFaces(StageTimer.REJECTED, start);
+      span.error(e).finish();
+      comparison.completeExceptionally(new FaceComparisonException(FaceComparisonException.Reason.THROTTLED, e));
+      return;
+    }
 
-      if (result.getFaceMatches().size() == 1) {
-        CompareFacesMatch compareFacesMatch = result.getFaceMatches().get(0);
-        return new FaceComparisonResult(true, compareFacesMatch.getSimilarity());
-      }
+    try {
+      rekognitionClient.compareFacesAsync(compareFacesRequest, new AsyncHandler<CompareFacesRequest, CompareFacesResult>() {
+        @Override
+        public void onError(Exception e) {
+          permit.release(e);
+          FaceComparisonException failure = FaceComparisonException.of(e);
+          recordCompareFaces(failure.getReason().name().toLowerCase(), start);
+          span.tag("rekognition.failure", failure.getReason().name()).error(e).finish();
+          comparison.completeExceptionally(failure);
+        }
 
-      return new FaceComparisonResult(false, 0);
-    } catch (AmazonRekognitionException e) {
-      e.printStackTrace();
-      return new FaceComparisonResult(false, -1);
+        @Override
+        public void onSuccess(CompareFacesRequest request, CompareFacesResult result) {
+          permit.release(null);
+          recordCompareFaces(StageTimer.SUCCESS, start);
+          span.finish();
+          FaceComparisonResult faceComparisonResult = toFaceComparisonResult(result);
+          if (cacheKey != null) {
+            resultCache.put(cacheKey, faceComparisonResult);
+          }
+          comparison.complete(faceComparisonResult);
+        }
+      });
+    } catch (RuntimeException e) {
+      // rejected by the client executor or its request validation before the call was made
+      permit.release(e);
+      recordCompareFaces(FaceComparisonException.Reason.SERVICE_ERROR.name().toLowerCase(), start);
+      span.tag("rekognition.failure", FaceComparisonException.Reason.SERVICE_ERROR.name()).error(e).finish();
+      comparison.completeExceptionally(new FaceComparisonException(FaceComparisonException.Reason.SERVICE_ERROR, e));
     }
   }
 
+  @SuppressWarnings("try")
+  private FaceComparisonResult doCompareFaces(Image sourceImage, Image targetImage) {
+    Span span = compareFacesSpan();
+    CompareFacesRequest request = compareFacesRequest(sourceImage, targetImage, span);
+    long start = System.nanoTime();
+    String outcome = StageTimer.ERROR;
+    try (Tracer.SpanInScope ignored = tracer.withSpanInScope(span)) {
+      CompareFacesResult result = limiter.call(1, () -> rekognitionClient.compareFaces(request));
+      outcome = StageTimer.SUCCESS;
+      return toFaceComparisonResult(result);
+    } catch (RejectedExecutionException e) {
+      outcome = StageTimer.REJECTED;
+      span.error(e);
+      throw e;
+    } catch (AmazonClientException e) {
+      FaceComparisonException failure = FaceComparisonException.of(e);
+      outcome = failure.getReason().name().toLowerCase();
+      span.tag("rekognition.failure", failure.getReason().name()).error(e);
+      log.warn("Face comparison failed: {}", failure.getMessage());
+      return FaceComparisonResult.failed(failure.getReason().name());
+    } finally {
+      recordCompareFaces(outcome, start);
+      span.finish();
+    }
+  }
+
+  private Span compareFacesSpan() {
+    return tracer.nextSpan().name("rekognition.compare-faces").start();
+  }
+
+  private CompareFacesRequest compareFacesRequest(Image sourceImage, Image targetImage, Span span) {
+    CompareFacesRequest request = stageTimer.record("rekognition.preprocess", StageTimer.LOCAL, "compare-faces",
+                                                    () -> new CompareFacesRequest().withSourceImage(downscale(sourceImage))
+                                                                                   .withTargetImage(downscale(targetImage)));
+    tagSize(span, "rekognition.source", sourceImage, request.getSourceImage());
+    tagSize(span, "rekognition.target", targetImage, request.getTargetImage());
+    return request;
+  }
+
+  private static void tagSize(Span span, String prefix, Image original, Image sent) {
+    if (sent.getBytes() != null) {
+      span.tag(prefix + ".original.bytes", String.valueOf(original.getBytes().remaining()));
+      span.tag(prefix + ".sent.bytes", String.valueOf(sent.getBytes().remaining()));
+    }
+  }
+
+  private void recordCompareFaces(String outcome, long start) {
+    stageTimer.record("rekognition.compare-faces", StageTimer.AWS_REKOGNITION, "compare-faces", outcome, System.nanoTime() - start);
+  }
+
+  private static FaceComparisonResult toFaceComparisonResult(CompareFacesResult result) {
+    if (result.getFaceMatches().size() == 1) {
+      CompareFacesMatch compareFacesMatch = result.getFaceMatches().get(0);
+      return new FaceComparisonResult(true, compareFacesMatch.getSimilarity());
+    }
+
+    return new FaceComparisonResult(false, 0);
+  }
+
+  // keeps payloads well below the 5 MB CompareFaces limit
+  private Image downscale(Image image) {
+    if (image.getBytes() == null) {
+      return image;
+    }
+    int maxDimension = imagePreprocessingService.getProperties().getCompareFacesMaxDimension();
+    return new Image().withBytes(imagePreprocessingService.downscale(image.getBytes(), maxDimension));
+  }
+
+  // images stored in S3 are not cached, only the object reference would be hashed
+  private static String cacheKey(Image sourceImage, Image targetImage) {
+    if (sourceImage.getBytes() == null || targetImage.getBytes() == null) {
+      return null;
+    }
+    return ContentHash.of(sourceImage.getBytes(), ContentHash.of(targetImage.getBytes()));
+  }
 }
@@ -0,0 +1,297 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.BatchVerificationProperties;
+import com.chcekit.recognize.config.MrzProperties;
+import com.chcekit.recognize.model.BatchItem;
+import com.chcekit.recognize.model.BatchItemResult;
+import com.chcekit.recognize.model.DocumentSide;
+import com.chcekit.recognize.model.ImageAnnotation;
+import com.chcekit.recognize.model.ImageBytes;
+import com.chcekit.recognize.model.ImageComparisonWebInfo;
+import com.chcekit.recognize.model.ImageLabel;
+import com.chcekit.recognize.model.MrzData;
+import com.chcekit.recognize.model.MrzRead;
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.FaceAnnotation;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Image;
+import com.google.common.collect.Lists;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Verifies many document sets at once, e.g. for KYC backfills.
+ * Vision requests of several items are packed into one batchAnnotateImages call and
+ * Rekognition comparisons run with bounded concurrency.
+ * As in /api/collect the backs are OCRed only for items whose front has no MRZ, in a second call,
+ * unless recognize.mrz.speculative-read sends them with the first one.
+ */
+@Service
+@Slf4j
+public class BatchVerificationService {
+
+    // selfie, front and back of the identity document
+    private static final int IMAGES_PER_ITEM = 3;
+
+    private final GoogleVisionService googleVisionService;
+    private final DocumentVerificationService documentVerificationService;
+    private final BatchVerificationProperties properties;
+    private final MrzProperties mrzProperties;
+
+    private final ExecutorService visionExecutor;
+    private final ExecutorService comparisonExecutor;
+
+    public BatchVerificationService(GoogleVisionService googleVisionService, DocumentVerificationService documentVerificationService,
+                                    BatchVerificationProperties properties, MrzProperties mrzProperties,
+                                    @Qualifier("batchVisionExecutor") ExecutorService visionExecutor,
+                                    @Qualifier("batchComparisonExecutor") ExecutorService comparisonExecutor) {
+        this.googleVisionService = googleVisionService;
+        this.documentVerificationService = documentVerificationService;
+        this.properties = properties;
+        this.mrzProperties = mrzProperties;
+        this.visionExecutor = visionExecutor;
+        this.comparisonExecutor = comparisonExecutor;
+    }
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(properties.getBaseDirectory());
+    }
+
+    /**
+     * Verifies all items of the manifest.
+     * Images of an item are read only when its Vision batch is about to be sent.
+     * At most one chunk per Vision thread is in flight, the next chunk is submitted when one completes.
+     *
+     * @param items document sets to verify
+     * @param resultConsumer receives each item result as soon as it is complete, it is called from several threads
+     * @return future completed when all items are processed, failed if the executor rejects a chunk
+     */
+    public CompletableFuture<Void> verify(List<BatchItem> items, Consumer<BatchItemResult> resultConsumer) {
+        int itemsPerCall = Math.max(1, properties.getVisionBatchSize() / IMAGES_PER_ITEM);
+        List<List<BatchItem>> chunks = Lists.partition(items, itemsPerCall);
+        if (chunks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ChunkWindow window = new ChunkWindow(chunks, resultConsumer);
+        for (int i = 0; i < Math.min(chunks.size(), properties.getMaxConcurrentVisionCalls()); i++) {
+            window.submitNext();
+        }
+        return window.done;
+    }
+
+    private CompletableFuture<Void> verifyChunk(List<BatchItem> chunk, Consumer<BatchItemResult> resultConsumer) {
+        List<LoadedItem> loadedItems = new ArrayList<>();
+        List<AnnotateImageRequest> requests = new ArrayList<>();
+        Feature.Type[] idBackFeatures = mrzProperties.isSpeculativeRead()
+          ? new Feature.Type[]{Feature.Type.LABEL_DETECTION, Feature.Type.DOCUMENT_TEXT_DETECTION}
+          : new Feature.Type[]{Feature.Type.LABEL_DETECTION};
+        for (BatchItem item : chunk) {
+            try {
+                LoadedItem loadedItem = load(item);
+                loadedItems.add(loadedItem);
+                requests.add(GoogleVisionService.buildRequest(toVisionImage(loadedItem.getSelfie()), Feature.Type.FACE_DETECTION));
+                requests.add(GoogleVisionService.buildRequest(toVisionImage(loadedItem.getIdFront()), Feature.Type.LABEL_DETECTION, Feature.Type.FACE_DETECTION,
+                                                              Feature.Type.DOCUMENT_TEXT_DETECTION));
+                requests.add(GoogleVisionService.buildRequest(toVisionImage(loadedItem.getIdBack()), idBackFeatures));
+            } catch (IOException | RuntimeException e) {
+                resultConsumer.accept(new BatchItemResult(item.getId(), null, "Cannot read images: " + e.getMessage()));
+            }
+        }
+
+        if (loadedItems.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<ImageAnnotation> annotations;
+        try {
+            annotations = annotate(requests);
+        } catch (RuntimeException e) {
+            log.error("Vision batch of {} items failed", loadedItems.size(), e);
+            loadedItems.forEach(loadedItem -> resultConsumer.accept(new BatchItemResult(loadedItem.getId(), null, "Vision API call failed: " + e.getMessage())));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // front of a detected document first, back only if the front has no MRZ
+        List<Optional<MrzRead>> mrzReads = new ArrayList<>();
+        List<Integer> backReads = new ArrayList<>();
+        for (int i = 0; i < loadedItems.size(); i++) {
+            ImageAnnotation idFront = annotations.get(i * IMAGES_PER_ITEM + 1);
+            ImageAnnotation idBack = annotations.get(i * IMAGES_PER_ITEM + 2);
+            boolean idFrontDocument = isDocument(idFront);
+            mrzReads.add(idFrontDocument ? readMrz(DocumentSide.FRONT, idFront) : Optional.empty());
+            if (!mrzReads.get(i).isPresent() && idFrontDocument && isDocument(idBack)) {
+                if (mrzProperties.isSpeculativeRead()) {
+                    mrzReads.set(i, readMrz(DocumentSide.BACK, idBack));
+                } else {
+                    backReads.add(i);
+                }
+            }
+        }
+
+        Set<Integer> failedItems = new HashSet<>();
+        if (!backReads.isEmpty()) {
+            List<AnnotateImageRequest> backRequests = new ArrayList<>();
+            backReads.forEach(i -> backRequests.add(GoogleVisionService.buildRequest(toVisionImage(loadedItems.get(i).getIdBack()),
+                                                                                     Feature.Type.DOCUMENT_TEXT_DETECTION)));
+            try {
+                List<ImageAnnotation> backTexts = annotate(backRequests);
+                for (int j = 0; j < backReads.size(); j++) {
+                    mrzReads.set(backReads.get(j), readMrz(DocumentSide.BACK, backTexts.get(j)));
+                }
+            } catch (RuntimeException e) {
+                log.error("Vision batch of {} document backs failed", backReads.size(), e);
+                backReads.forEach(i -> resultConsumer.accept(new BatchItemResult(loadedItems.get(i).getId(), null, "Vision API call failed: " + e.getMessage())));
+                failedItems.addAll(backReads);
+            }
+        }
+
+        List<CompletableFuture<Void>> itemResults = new ArrayList<>();
+        for (int i = 0; i < loadedItems.size(); i++) {
+            if (failedItems.contains(i)) {
+                continue;
+            }
+            LoadedItem loadedItem = loadedItems.get(i);
+            List<ImageAnnotation> itemAnnotations = annotations.subList(i * IMAGES_PER_ITEM, (i + 1) * IMAGES_PER_ITEM);
+
+            itemResults.add(verifyItem(loadedItem, itemAnnotations.get(0), itemAnnotations.get(1), itemAnnotations.get(2), mrzReads.get(i))
+                              .handle((result, e) -> e == null
+                                ? new BatchItemResult(loadedItem.getId(), result, null)
+                                : new BatchItemResult(loadedItem.getId(), null, e.getMessage()))
+                              .thenAccept(resultConsumer));
+        }
+        return CompletableFuture.allOf(itemResults.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Annotates the images of a chunk within the Vision budget of batch verification.
+     * A chunk rejected by the limiter, e.g. while the budget is taken by the other chunks, is sent again.
+     */
+    private List<ImageAnnotation> annotate(List<AnnotateImageRequest> requests) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return googleVisionService.annotateBackgroundBatch(requests);
+            } catch (RejectedExecutionException e) {
+                if (attempt >= properties.getVisionAttempts()) {
+                    throw e;
+                }
+                log.warn("Vision batch of {} images rejected, attempt {} of {}: {}", requests.size(), attempt, properties.getVisionAttempts(), e.getMessage());
+            }
+        }
+    }
+
+    private CompletableFuture<ImageComparisonWebInfo> verifyItem(LoadedItem item, ImageAnnotation selfie, ImageAnnotation idFront, ImageAnnotation idBack,
+                                                                 Optional<MrzRead> mrzData) {
+        Optional<FaceAnnotation> selfieFace = documentVerificationService.detectFace(selfie.getFaces());
+        Optional<ImageLabel> idFrontDocument = documentVerificationService.detectIdentityDocument(idFront.getLabels());
+        Optional<ImageLabel> idBackDocument = documentVerificationService.detectIdentityDocument(idBack.getLabels());
+
+        if (!selfieFace.isPresent() || !idFrontDocument.isPresent()) {
+            return CompletableFuture.completedFuture(
+              documentVerificationService.toWebInfo(selfieFace, idFrontDocument, idBackDocument, Optional.empty(), mrzData, false));
+        }
+
+        return CompletableFuture.supplyAsync(() -> documentVerificationService.compareFaces(item.getSelfie(), selfie.getFaces(), item.getIdFront(), idFront.getFaces()),
+                                             comparisonExecutor)
+                                .thenApply(faceComparison -> documentVerificationService.toWebInfo(selfieFace, idFrontDocument, idBackDocument,
+                                                                                                   faceComparison, mrzData, false));
+    }
+
+    private boolean isDocument(ImageAnnotation annotation) {
+        return documentVerificationService.detectIdentityDocument(annotation.getLabels()).isPresent();
+    }
+
+    private Optional<MrzRead> readMrz(DocumentSide side, ImageAnnotation annotation) {
+        MrzData mrzData = googleVisionService.detectMrz(annotation.getTextBlocks());
+        return mrzData.isMissing() ? Optional.empty() : Optional.of(new MrzRead(side, mrzData));
+    }
+
+    private LoadedItem load(BatchItem item) throws IOException {
+        return new LoadedItem(item.getId(),
+                              ImageBytes.of(resolve(item.getSelfie())),
+                              ImageBytes.of(resolve(item.getIdFront())),
+                              ImageBytes.of(resolve(item.getIdBack())));
+    }
+
+    // manifest paths must not point outside of the base directory
+    private Path resolve(String path) {
+        Path baseDirectory = Paths.get(properties.getBaseDirectory()).toAbsolutePath().normalize();
+        Path resolved = baseDirectory.resolve(path).normalize();
+        if (!resolved.startsWith(baseDirectory)) {
+            throw new IllegalArgumentException("Path outside of the batch base directory: " + path);
+        }
+        return resolved;
+    }
+
+    private static Image toVisionImage(ImageBytes imageBytes) {
+        return Image.newBuilder()
+                    .setContent(imageBytes.asByteString())
+                    .build();
+    }
+
+    /**
+     * Chunks of one batch, submitted one after another as the chunks in flight complete.
+     */
+    private class ChunkWindow {
+        private final List<List<BatchItem>> chunks;
+        private final Consumer<BatchItemResult> resultConsumer;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        ChunkWindow(List<List<BatchItem>> chunks, Consumer<BatchItemResult> resultConsumer) {
+            this.chunks = chunks;
+            this.resultConsumer = resultConsumer;
+            this.remaining = new AtomicInteger(chunks.size());
+        }
+
+        void submitNext() {
+            int index = next.getAndIncrement();
+            if (index >= chunks.size() || done.isDone()) {
+                return;
+            }
+            List<BatchItem> chunk = chunks.get(index);
+            try {
+                CompletableFuture.supplyAsync(() -> verifyChunk(chunk, resultConsumer), visionExecutor)
+                                 .thenCompose(chunkResults -> chunkResults)
+                                 .whenComplete((chunkDone, e) -> {
+                                     if (e != null) {
+                                         done.completeExceptionally(e);
+                                     } else if (remaining.decrementAndGet() == 0) {
+                                         done.complete(null);
+                                     } else {
+                                         submitNext();
+                                     }
+                                 });
+            } catch (RejectedExecutionException e) {
+                // the queue is full of the chunks of other batches
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Data
+    private static class LoadedItem {
+        private final String id;
+        private final ImageBytes selfie;
+        private final ImageBytes idFront;
+        private final ImageBytes idBack;
+    }
+}
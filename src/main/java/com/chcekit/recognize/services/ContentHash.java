@@ -0,0 +1,34 @@
+package com.chcekit.recognize.services;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds result cache keys from image content.
+ */
+final class ContentHash {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private ContentHash() {
+  }
+
+  /**
+   * @param content image bytes, the buffer position is not modified
+   * @param qualifiers additional key parts, e.g. requested features
+   * @return hex encoded hash of the content followed by the qualifiers
+   */
+  static String of(ByteBuffer content, Object... qualifiers) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    hasher.putBytes(content.duplicate());
+
+    StringBuilder key = new StringBuilder(hasher.hash().toString());
+    for (Object qualifier : qualifiers) {
+      key.append(':').append(qualifier);
+    }
+    return key.toString();
+  }
+}
@@ -0,0 +1,211 @@
+package com.chcekit.recognize.services;
+
+import com.amazonaws.services.rekognition.model.Image;
+import com.chcekit.recognize.config.FaceGateProperties;
+import com.chcekit.recognize.model.FaceComparisonResult;
+import com.chcekit.recognize.model.ImageBytes;
+import com.chcekit.recognize.model.ImageComparisonWebInfo;
+import com.chcekit.recognize.model.ImageLabel;
+import com.chcekit.recognize.model.MrzRead;
+import com.google.cloud.vision.v1.FaceAnnotation;
+import com.google.cloud.vision.v1.Vertex;
+import org.springframework.stereotype.Service;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Verification rules shared by the single and the batch document collection.
+ */
+@Service
+public class DocumentVerificationService {
+
+  private static final String IDENTITY_DOCUMENT_LABEL = "identity document";
+
+  private static final float FACE_CONFIDENCE = 0.55f;
+
+  private final AmazonRekognitionService amazonRekognitionService;
+  private final ImagePreprocessingService imagePreprocessingService;
+  private final FaceGateProperties faceGateProperties;
+
+  public DocumentVerificationService(AmazonRekognitionService amazonRekognitionService, ImagePreprocessingService imagePreprocessingService,
+                                     FaceGateProperties faceGateProperties) {
+    this.amazonRekognitionService = amazonRekognitionService;
+    this.imagePreprocessingService = imagePreprocessingService;
+    this.faceGateProperties = faceGateProperties;
+  }
+
+  /**
+   * @return the first face detected with enough confidence to consider the image a real selfie
+   */
+  public Optional<FaceAnnotation> detectFace(List<FaceAnnotation> faceAnnotations) {
+    return faceAnnotations.stream()
+                          .filter(faceAnnotation -> faceAnnotation.getDetectionConfidence() > FACE_CONFIDENCE)
+                          .findFirst();
+  }
+
+  /**
+   * @return identity document label with enough high score
+   */
+  public Optional<ImageLabel> detectIdentityDocument(List<ImageLabel> imageLabels) {
+    return imageLabels.stream()
+                      .filter(imageLabel -> IDENTITY_DOCUMENT_LABEL.equalsIgnoreCase(imageLabel.getDescription()))
+                      .filter(imageLabel -> imageLabel.getScore() > 0.6)
+                      .findFirst();
+  }
+
+  /**
+   * Compares the selfie face with the face on the front of the document using Rekognition.
+   * With the face gate enabled the faces found by Vision decide whether the comparison is worth a call:
+   * the selfie has to show one confident face and both faces have to be large enough.
+   * Only the face regions are sent then, not the whole images.
+   *
+   * @param selfieFaces faces Vision found on the selfie, positions in pixels of the selfie image
+   * @param idFrontFaces faces Vision found on the front of the document
+   * @return comparison result, empty if the faces are not worth comparing
+   */
+  public Optional<FaceComparisonResult> compareFaces(ImageBytes selfieBytes, List<FaceAnnotation> selfieFaces,
+                                                     ImageBytes idFrontBytes, List<FaceAnnotation> idFrontFaces) {
+    return faceImages(selfieBytes, selfieFaces, idFrontBytes, idFrontFaces)
+      .map(faceImages -> amazonRekognitionService.compareFaces(faceImages.selfie, faceImages.idFront));
+  }
+
+  /**
+   * Non-blocking variant of {@link #compareFaces(ImageBytes, List, ImageBytes, List)}.
+   * The face gate and cropping run on the calling thread, the Rekognition call on the threads of its async client.
+   *
+   * @return comparison result, empty if the faces are not worth comparing,
+   * failed with {@link FaceComparisonException} if the Rekognition call fails
+   */
+  public CompletableFuture<Optional<FaceComparisonResult>> compareFacesAsync(ImageBytes selfieBytes, List<FaceAnnotation> selfieFaces,
+                                                                             ImageBytes idFrontBytes, List<FaceAnnotation> idFrontFaces) {
+    Optional<FaceImages> faceImages = faceImages(selfieBytes, selfieFaces, idFrontBytes, idFrontFaces);
+    if (!faceImages.isPresent()) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    return amazonRekognitionService.compareFacesAsync(faceImages.get().selfie, faceImages.get().idFront)
+                                   .thenApply(Optional::of);
+  }
+
+  private Optional<FaceImages> faceImages(ImageBytes selfieBytes, List<FaceAnnotation> selfieFaces,
+                                          ImageBytes idFrontBytes, List<FaceAnnotation> idFrontFaces) {
+    ByteBuffer selfie = selfieBytes.asByteBuffer();
+    ByteBuffer idFront = idFrontBytes.asByteBuffer();
+
+    if (faceGateProperties.isEnabled()) {
+      List<FaceAnnotation> confidentSelfieFaces = selfieFaces.stream()
+                                                             .filter(faceAnnotation -> faceAnnotation.getDetectionConfidence() > FACE_CONFIDENCE)
+                                                             .collect(Collectors.toList());
+      if (confidentSelfieFaces.size() > faceGateProperties.getMaxSelfieFaces()) {
+        return Optional.empty();
+      }
+
+      Optional<Rectangle> selfieFace = largestFace(confidentSelfieFaces);
+      Optional<Rectangle> idFrontFace = largestFace(idFrontFaces);
+      if (!selfieFace.isPresent() || !idFrontFace.isPresent()) {
+        return Optional.empty();
+      }
+
+      selfie = imagePreprocessingService.crop(selfie, pad(selfieFace.get()));
+      idFront = imagePreprocessingService.crop(idFront, pad(idFrontFace.get()));
+    }
+
+    return Optional.of(new FaceImages(new Image().withBytes(selfie), new Image().withBytes(idFront)));
+  }
+
+  /**
+   * @return bounding box of the largest face at least minFaceSize pixels big
+   */
+  private Optional<Rectangle> largestFace(List<FaceAnnotation> faceAnnotations) {
+    return faceAnnotations.stream()
+                          .map(DocumentVerificationService::boundingBox)
+                          .filter(box -> Math.min(box.width, box.height) >= faceGateProperties.getMinFaceSize())
+                          .max(Comparator.comparingLong(box -> (long) box.width * box.height));
+  }
+
+  private static Rectangle boundingBox(FaceAnnotation faceAnnotation) {
+    List<Vertex> vertices = faceAnnotation.getBoundingPoly().getVerticesList();
+    if (vertices.isEmpty()) {
+      return new Rectangle();
+    }
+
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (Vertex vertex : vertices) {
+      minX = Math.min(minX, vertex.getX());
+      minY = Math.min(minY, vertex.getY());
+      maxX = Math.max(maxX, vertex.getX());
+      maxY = Math.max(maxY, vertex.getY());
+    }
+    return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+  }
+
+  // Rekognition detects the face again, it needs some context around it
+  private Rectangle pad(Rectangle face) {
+    int paddingX = (int) (face.width * faceGateProperties.getCropPadding());
+    int paddingY = (int) (face.height * faceGateProperties.getCropPadding());
+    return new Rectangle(face.x - paddingX, face.y - paddingY, face.width + 2 * paddingX, face.height + 2 * paddingY);
+  }
+
+  /**
+   * @param mrzInput keep the raw OCR text of the MRZ, it is left out of responses by default
+   */
+  public ImageComparisonWebInfo toWebInfo(Optional<FaceAnnotation> selfieFace, Optional<ImageLabel> idFrontDocument, Optional<ImageLabel> idBackDocument,
+                                          Optional<FaceComparisonResult> faceComparison, Optional<MrzRead> mrzData, boolean mrzInput) {
+    ImageComparisonWebInfo imageComparisonWebInfo = new ImageComparisonWebInfo();
+
+    selfieFace.ifPresent(faceAnnotation -> {
+      imageComparisonWebInfo.setFaceDetected(true);
+      imageComparisonWebInfo.setFaceScore(faceAnnotation.getDetectionConfidence());
+      imageComparisonWebInfo.setSorrow(faceAnnotation.getSorrowLikelihood()
+                                                     .name());
+      imageComparisonWebInfo.setAnger(faceAnnotation.getAngerLikelihood()
+                                                    .name());
+      imageComparisonWebInfo.setJoy(faceAnnotation.getJoyLikelihood()
+                                                  .name());
+      imageComparisonWebInfo.setSurprise(faceAnnotation.getSurpriseLikelihood()
+                                                       .name());
+    });
+
+    idFrontDocument.ifPresent(imageLabel -> {
+      imageComparisonWebInfo.setIdFrontDocumentDetected(true);
+      imageComparisonWebInfo.setIdFrontDocumentScore(imageLabel.getScore());
+    });
+
+    idBackDocument.ifPresent(imageLabel -> {
+      imageComparisonWebInfo.setIdBackDocumentDetected(true);
+      imageComparisonWebInfo.setIdBackDocumentScore(imageLabel.getScore());
+    });
+
+    faceComparison.ifPresent(faceComparisonResult -> {
+      imageComparisonWebInfo.setFaceComparisonResult(faceComparisonResult.isSuccess());
+      imageComparisonWebInfo.setFaceComparisonScore(faceComparisonResult.getScore());
+      imageComparisonWebInfo.setFaceComparisonFailure(faceComparisonResult.getFailure());
+    });
+
+    mrzData.ifPresent(mrzRead -> {
+      imageComparisonWebInfo.setMrz(mrzInput ? mrzRead.getMrzData() : mrzRead.getMrzData().withoutInput());
+      imageComparisonWebInfo.setMrzSide(mrzRead.getSide());
+    });
+
+    return imageComparisonWebInfo;
+  }
+
+  private static final class FaceImages {
+    private final Image selfie;
+    private final Image idFront;
+
+    private FaceImages(Image selfie, Image idFront) {
+      this.selfie = selfie;
+      this.idFront = idFront;
+    }
+  }
+}
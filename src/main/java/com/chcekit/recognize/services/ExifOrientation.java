@@ -0,0 +1,88 @@
+package com.chcekit.recognize.services;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the EXIF Orientation tag of a JPEG without decoding the image.
+ * Phone cameras store portrait pictures as landscape pixels with an orientation telling viewers how to rotate them.
+ * ImageIO ignores the tag, so an image re-encoded from decoded pixels loses its rotation.
+ */
+final class ExifOrientation {
+
+    // pixels are stored upright
+    static final int NORMAL = 1;
+
+    private static final int SOI = 0xD8;
+    private static final int APP1 = 0xE1;
+    private static final int SOS = 0xDA;
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * @param content encoded image, its position is not modified
+     * @return orientation 1-8, {@link #NORMAL} if the image is not a JPEG or has no orientation tag
+     */
+    static int of(ByteBuffer content) {
+        ByteBuffer jpeg = content.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = jpeg.position();
+        if (jpeg.remaining() < 4 || (jpeg.get(start) & 0xFF) != 0xFF || (jpeg.get(start + 1) & 0xFF) != SOI) {
+            return NORMAL;
+        }
+
+        // EXIF is in an APP1 segment before the image data
+        int offset = start + 2;
+        while (offset + 4 <= jpeg.limit() && (jpeg.get(offset) & 0xFF) == 0xFF) {
+            int marker = jpeg.get(offset + 1) & 0xFF;
+            if (marker == SOS) {
+                break;
+            }
+            int length = jpeg.getShort(offset + 2) & 0xFFFF;
+            if (marker == APP1 && isExif(jpeg, offset + 4, length - 2)) {
+                return orientation(jpeg, offset + 4 + EXIF_HEADER.length, offset + 2 + length);
+            }
+            offset += 2 + length;
+        }
+        return NORMAL;
+    }
+
+    private static boolean isExif(ByteBuffer jpeg, int offset, int length) {
+        if (length < EXIF_HEADER.length + 8 || offset + EXIF_HEADER.length > jpeg.limit()) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (jpeg.get(offset + i) != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // TIFF header with the byte order, then the first IFD with 12 byte entries
+    private static int orientation(ByteBuffer jpeg, int tiff, int segmentEnd) {
+        int end = Math.min(segmentEnd, jpeg.limit());
+        if (tiff + 8 > end) {
+            return NORMAL;
+        }
+        ByteBuffer exif = jpeg.duplicate().order(jpeg.get(tiff) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        long ifd = tiff + (exif.getInt(tiff + 4) & 0xFFFFFFFFL);
+        if (ifd + 2 > end) {
+            return NORMAL;
+        }
+        int entries = exif.getShort((int) ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if ((exif.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                int orientation = exif.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+}
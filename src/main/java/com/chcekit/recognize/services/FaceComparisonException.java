@@ -0,0 +1,73 @@
+package com.chcekit.recognize.services;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.http.exception.HttpRequestTimeoutException;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.services.rekognition.model.ImageTooLargeException;
+import com.amazonaws.services.rekognition.model.InvalidImageFormatException;
+import com.amazonaws.services.rekognition.model.InvalidParameterException;
+import com.amazonaws.services.rekognition.model.LimitExceededException;
+import com.amazonaws.services.rekognition.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.rekognition.model.ThrottlingException;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Failed face comparison call, the reason tells the caller whether a retry makes sense.
+ */
+public class FaceComparisonException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum Reason {
+    // request rate or concurrency limit of the account reached, worth a retry later
+    THROTTLED,
+    // image format is not supported or the image is too large
+    INVALID_IMAGE,
+    // no face found on the source image
+    NO_FACE,
+    // no response within the configured client timeouts
+    TIMEOUT,
+    // any other service or network error
+    SERVICE_ERROR
+  }
+
+  private final Reason reason;
+
+  public FaceComparisonException(Reason reason, Throwable cause) {
+    super(reason + ": " + cause.getMessage(), cause);
+    this.reason = reason;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * @param e exception thrown by the Rekognition client
+   */
+  static FaceComparisonException of(Exception e) {
+    return new FaceComparisonException(reason(e), e);
+  }
+
+  static Reason reason(Throwable e) {
+    if (e instanceof FaceComparisonException) {
+      return ((FaceComparisonException) e).getReason();
+    }
+    if (e instanceof ThrottlingException || e instanceof ProvisionedThroughputExceededException || e instanceof LimitExceededException) {
+      return Reason.THROTTLED;
+    }
+    if (e instanceof InvalidImageFormatException || e instanceof ImageTooLargeException) {
+      return Reason.INVALID_IMAGE;
+    }
+    // the only parameter Rekognition rejects in our requests is a source image without a face
+    if (e instanceof InvalidParameterException) {
+      return Reason.NO_FACE;
+    }
+    if (e instanceof ClientExecutionTimeoutException || e instanceof HttpRequestTimeoutException
+      || (e instanceof AmazonClientException && e.getCause() instanceof SocketTimeoutException)) {
+      return Reason.TIMEOUT;
+    }
+    return Reason.SERVICE_ERROR;
+  }
+}
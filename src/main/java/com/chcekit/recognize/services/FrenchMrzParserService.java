@@ -1,19 +1,36 @@
 package com.chcekit.recognize.services;
 
 import com.chcekit.recognize.model.MrzData;
-import com.ibm.icu.text.Transliterator;
-import org.apache.commons.lang3.StringUtils;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
-import java.io.StringReader;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Service
-public class FrenchMrzParserService {
+@Order(2)
+public class FrenchMrzParserService implements MrzFormat {
     private static final String MRZ_START_MARKER = "IDFRA";
 
-    private static final Transliterator latinConverter = Transliterator.getInstance("Any-Latin; NFD; [:M:] Remove; NFC; [^\\p{ASCII}] Remove");
+    // both lines have 36 characters
+    private static final int SECOND_LINE = 36;
+    private static final int BIRTH_DATE_POSITION = SECOND_LINE + 27;
+    private static final int COMPOSITE_POSITION = SECOND_LINE + 35;
+
+    // year and month of issuance and sequence number are digits, the department may have a letter as 2A and 2B do
+    private static final String CARD_NUMBER_LAYOUT = "9999AAA99999";
+
+    @Override
+    public String getName() {
+        return "french-id";
+    }
+
+    @Override
+    public List<String> getStartMarkers() {
+        return Collections.singletonList(MRZ_START_MARKER);
+    }
 
     /**
      * Checks whether a given line is a beginning of the MRZ section.
@@ -28,36 +45,37 @@ public class FrenchMrzParserService {
 
     /**
      * Ultra-forgiving MRZ parser.
-     * Extracts surname, given names, document number, birth date, sex and validity date.
+     * Extracts surname, given names, card number, birth date and sex, and verifies the check digits.
+     * Fields are set on the result as they are read, if the text ends early the fields read so far are returned.
      *
      * @param mrzData MRZ text
      * @return structured MRZ data
      */
+    @Override
     public MrzData parse(String mrzData) {
         try {
             if (mrzData == null || mrzData.length() == 0) {
                 return MrzData.builder().input(mrzData).missing(true).build();
             }
 
-            final String mrzDataUpper = mrzData.toUpperCase();
-            final String mrz = latinConverter.transform(mrzDataUpper);
+            final MrzScanner scanner = MrzScanner.of(mrzData);
 
-            if (!isStartOfMrz(mrz)) {
+            if (!isStartOfMrz(scanner.text())) {
                 return MrzData.builder().input(mrzData).missing(true).build();
             }
 
-            StringReader reader = new StringReader(mrz);
+            final MrzData.MrzDataBuilder result = MrzData.builder().input(scanner.text());
 
-            reader.skip(5); // skip IDFRA
+            scanner.skip(5); // skip IDFRA
 
-            StringBuilder surnameBuilder = new StringBuilder();
+            final int surnameStart = scanner.mark();
             int processedCharacters = 0;
             while(processedCharacters <= 25) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 // names should always be present - fail fast if there is no data to process
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).missing(true).build();
+                    return result.missing(true).build();
                 }
 
                 if(character == '<') {
@@ -65,19 +83,20 @@ public class FrenchMrzParserService {
                     break;
                 }
 
-                surnameBuilder.append((char)character);
+                scanner.append(character);
 
                 processedCharacters++;
             }
+            result.nationalityCode("FRA").surname(scanner.field(surnameStart, scanner.mark()));
 
             boolean characterDetected = false;
-            boolean lateCharacterDetected = false;
+            int lateCharacter = -1;
             for(int i = processedCharacters + 1; i <= 25+6; i++) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 // names should always be present - fail fast if there is no data to process
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).nationalityCode("FRA").surname(surnameBuilder.toString()).build();
+                    return result.build();
                 }
 
 
@@ -88,46 +107,62 @@ public class FrenchMrzParserService {
                         break;
                     }
                     else {
-                        lateCharacterDetected = true;
+                        lateCharacter = character;
                         break;
                     }
                 }
             }
 
             if(characterDetected) {
-                reader.skip(5); // skip 5-7 of ID card number, department of issuance
+                scanner.skip(5); // skip 5-7 of ID card number, department of issuance
             }
 
-            // year of issuance, month of issuance, department of issuance, place of issue and the date of application, control digit
-            if(lateCharacterDetected) {
-                reader.skip(12);
-            } else {
-                reader.skip(13);
+            // card number: year of issuance, month of issuance, department of issuance, sequence number, then its control digit
+            final int cardNumberStart = scanner.mark();
+            if(lateCharacter != -1) {
+                scanner.append(lateCharacter);
             }
+            while(scanner.mark() < cardNumberStart + 12) {
+                int character = scanner.read();
 
+                if(character == -1) {
+                    return result.build();
+                }
+                scanner.append(character);
+            }
 
+            int cardNumberCheck = scanner.read();
+            result.documentNumberConfidence(scanner.verifyAlphanumeric(cardNumberStart, cardNumberStart + 12, cardNumberCheck, CARD_NUMBER_LAYOUT))
+                  .documentNumber(scanner.field(cardNumberStart, cardNumberStart + 12));
+
+            if(cardNumberCheck == -1) {
+                return result.build();
+            }
+            scanner.appendCheckDigit(cardNumberCheck);
 
             int nameCharactersIterator = 1;
 
             int delimiterStep = 0;
             int firstDelimiterPosition = 0;
 
-            StringBuilder firstNameBuilder = new StringBuilder();
-            StringBuilder secondNameBuilder = new StringBuilder();
+            // first name and second name are consecutive fields
+            final int firstNameStart = scanner.mark();
+            int secondNameStart = -1;
             while(nameCharactersIterator <= 14) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 // names should always be present - fail fast if there is no data to process
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).nationalityCode("FRA").surname(surnameBuilder.toString()).build();
+                    return result.build();
                 }
 
                 if(delimiterStep == 0) {
                     if(character == '<') {
                         delimiterStep = 1;
                         firstDelimiterPosition = nameCharactersIterator;
+                        secondNameStart = scanner.mark();
                     } else {
-                        firstNameBuilder.append((char)character);
+                        scanner.append(character);
                     }
                 } else if (delimiterStep == 1) {
                     // skip any '<' characters detected after the very first < with 2 characters threshold
@@ -137,7 +172,7 @@ public class FrenchMrzParserService {
                     }
                     // fill-in first name
                     else if (character != '<') {
-                        secondNameBuilder.append((char)character);
+                        scanner.append(character);
                     }
                     // detect delimited before the second name
                     else {
@@ -149,49 +184,74 @@ public class FrenchMrzParserService {
                 nameCharactersIterator++;
             }
 
-            final String firstName = firstNameBuilder.toString();
-            final String secondName = secondNameBuilder.toString();
+            final int namesEnd = scanner.mark();
+            final String firstName = scanner.field(firstNameStart, secondNameStart != -1 ? secondNameStart : namesEnd);
+            final String secondName = secondNameStart != -1 ? scanner.field(secondNameStart, namesEnd) : "";
             final List<String> givenNames = Arrays.asList(firstName, secondName);
+            result.givenNames(givenNames);
 
-            StringBuilder birthDateBuilder = new StringBuilder();
+            final int birthDateStart = scanner.mark();
             for(int i = 1; i <= 6;) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).nationalityCode("FRA").surname(surnameBuilder.toString()).givenNames(givenNames).build();
+                    return result.build();
                 }
 
                 if(character == '<') {
                     continue;
                 }
 
-                birthDateBuilder.append((char)character);
+                scanner.append(character);
                 i++;
             }
 
-            String birthYear = birthDateBuilder.substring(0, 2);
+            int birthDateCheck = scanner.read();
+            result.birthDateConfidence(scanner.verifyDate(birthDateStart, birthDateCheck));
 
-            try {
-                birthYear = Integer.parseInt(birthYear) > 17 ? "19" + birthYear : "20" + birthYear;
-            } catch(NumberFormatException e) {
-                birthYear = null;            }
+            if(scanner.isDate(birthDateStart)) {
+                result.birthYear((scanner.twoDigits(birthDateStart) > 17 ? "19" : "20") + scanner.field(birthDateStart, birthDateStart + 2))
+                      .birthMonth(scanner.field(birthDateStart + 2, birthDateStart + 4))
+                      .birthDay(scanner.field(birthDateStart + 4, birthDateStart + 6));
+            }
 
-            String birthMonth = birthDateBuilder.substring(2, 4);
-            String birthDay = birthDateBuilder.substring(4, 6);
+            if(birthDateCheck == -1) {
+                return result.build();
+            }
+            scanner.appendCheckDigit(birthDateCheck);
+
+            // read sex
+            int sexRaw = scanner.read();
+
+            if(sexRaw == -1) {
+                return result.build();
+            }
+
+            result.sex(sexRaw == 'M' ? "male" : "female");
 
-            if(!StringUtils.isNumeric(birthYear) || !StringUtils.isNumeric(birthMonth) || !StringUtils.isNumeric(birthDay)) {
-                birthYear = birthMonth = birthDay = null;
+            // the composite check digit covers both lines up to the sex, its position is known only for complete lines
+            int compositeCheck = scanner.read();
+            if(compositeCheck != -1 && scanner.position() == COMPOSITE_POSITION + 1) {
+                result.compositeConfidence(verifyComposite(scanner, cardNumberStart, birthDateStart, compositeCheck));
             }
 
-            return MrzData.builder()
-                    .input(mrz)
-                    .surname(surnameBuilder.toString()).givenNames(givenNames)
-                    .birthYear(birthYear).birthMonth(birthMonth).birthDay(birthDay)
-                    .nationalityCode("FRA")
-                    .build();
+            return result.build();
 
         } catch (Exception e) {
             return MrzData.builder().input(mrzData).error(true).build();
         }
     }
+
+    /**
+     * Verifies the composite check digit over the text of both lines, with the card number and the birth date
+     * as corrected by their own check digits.
+     */
+    private static MrzFieldConfidence verifyComposite(MrzScanner scanner, int cardNumberStart, int birthDateStart, int compositeCheck) {
+        final char[] lines = scanner.text().substring(0, COMPOSITE_POSITION).toCharArray();
+        scanner.copy(cardNumberStart, cardNumberStart + 13, lines, SECOND_LINE);
+        scanner.copy(birthDateStart, birthDateStart + 7, lines, BIRTH_DATE_POSITION);
+
+        int sum = MrzCheckDigit.compute(lines, 0, lines.length, 0);
+        return sum != -1 && sum == MrzCheckDigit.digit(compositeCheck) ? MrzFieldConfidence.VALID : MrzFieldConfidence.INVALID;
+    }
 }
@@ -1,31 +1,60 @@
 package com.chcekit.recognize.services;
 
+import brave.Span;
+import brave.Tracer;
+import com.chcekit.recognize.config.MrzProperties;
+import com.chcekit.recognize.model.ImageAnnotation;
+import com.chcekit.recognize.model.ImageBytes;
 import com.chcekit.recognize.model.ImageLabel;
 import com.chcekit.recognize.model.MrzData;
 import com.google.cloud.vision.v1.*;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.awt.Dimension;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class GoogleVisionService {
 
-    private final MrzParserService mrzParser;
-    private final FrenchMrzParserService frenchMrzParserService;
+    private final MrzFormatRegistry mrzFormatRegistry;
+    private final ImageAnnotatorClient vision;
+    private final Cache<String, ImageAnnotation> resultCache;
+    private final ImagePreprocessingService imagePreprocessingService;
+    private final MrzRegionLocator mrzRegionLocator;
+    private final MrzProperties mrzProperties;
+    private final AdaptiveLimiter limiter;
+    private final AdaptiveLimiter batchLimiter;
+    private final StageTimer stageTimer;
+    private final Tracer tracer;
 
     @Autowired
-    public GoogleVisionService(MrzParserService mrzParser, FrenchMrzParserService frenchMrzParserService) {
-        this.mrzParser = mrzParser;
-        this.frenchMrzParserService = frenchMrzParserService;
+    public GoogleVisionService(MrzFormatRegistry mrzFormatRegistry, ImageAnnotatorClient vision,
+                               Cache<String, ImageAnnotation> resultCache, ImagePreprocessingService imagePreprocessingService,
+                               MrzRegionLocator mrzRegionLocator, MrzProperties mrzProperties, RecognitionLimiters recognitionLimiters,
+                               StageTimer stageTimer, Tracer tracer) {
+        this.mrzFormatRegistry = mrzFormatRegistry;
+        this.vision = vision;
+        this.resultCache = resultCache;
+        this.imagePreprocessingService = imagePreprocessingService;
+        this.mrzRegionLocator = mrzRegionLocator;
+        this.mrzProperties = mrzProperties;
+        this.limiter = recognitionLimiters.vision();
+        this.batchLimiter = recognitionLimiters.visionBatch();
+        this.stageTimer = stageTimer;
+        this.tracer = tracer;
     }
 
    /**
@@ -63,7 +92,7 @@ public class GoogleVisionService {
     private boolean detectLabels(MultipartFile file, Map<String, Float> searchForLabels) {
         ByteString imgBytes = null;
         try {
-            imgBytes = ByteString.copyFrom(file.getBytes());
+            imgBytes = ImageBytes.of(file).asByteString();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -75,182 +104,280 @@ public class GoogleVisionService {
     }
 
     public List<ImageLabel> resolveLabels(Image img) {
-        try {
-            Feature labelDetection = Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).build();
-            AnnotateImageRequest request = AnnotateImageRequest.newBuilder()
-                                                               .addFeatures(labelDetection)
-                                                               .setImage(img)
-                                                               .build();
-
-            // Instantiates a client
-            try (ImageAnnotatorClient vision = ImageAnnotatorClient.create()) {
-                BatchAnnotateImagesResponse response = vision.batchAnnotateImages(Arrays.asList(request));
-                List<AnnotateImageResponse> responses = response.getResponsesList();
-
-              responses.stream()
-                       .filter(AnnotateImageResponse::hasError)
-                       .findFirst()
-                       .ifPresent(annotateImageResponse -> {
-                         System.out.printf("Error: %s\n", annotateImageResponse.getError().getMessage());
-                         throw new RuntimeException(annotateImageResponse.getError().getMessage());
-                       });
-
-              return responses.stream()
-                              .flatMap(annotateImageResponse -> annotateImageResponse.getLabelAnnotationsList().stream())
-                              .map(annotation -> new ImageLabel(annotation.getDescription(), annotation.getScore()))
-                              .collect(Collectors.toList());
-            }
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return annotate(img, Feature.Type.LABEL_DETECTION).getLabels();
     }
 
     public List<FaceAnnotation> resolveFaces(Image img) {
-        try {
-            List<AnnotateImageRequest> requests = new ArrayList<>();
-            List<FaceAnnotation> faceAnnotationsList = new ArrayList<>();
-
-            Feature featureDetection = Feature.newBuilder().setType(Feature.Type.FACE_DETECTION).build();
-            AnnotateImageRequest request = AnnotateImageRequest.newBuilder()
-                                                               .addFeatures(featureDetection)
-                                                               .setImage(img)
-                                                               .build();
-            requests.add(request);
-
-            // Instantiates a client
-            try (ImageAnnotatorClient vision = ImageAnnotatorClient.create()) {
-                BatchAnnotateImagesResponse response = vision.batchAnnotateImages(requests);
-                List<AnnotateImageResponse> responses = response.getResponsesList();
-
-                for (AnnotateImageResponse res : responses) {
-                    if (res.hasError()) {
-                        System.out.printf("Error: %s\n", res.getError().getMessage());
-                        throw new RuntimeException(res.getError().getMessage());
-                    }
-
-                    for (FaceAnnotation annotation : res.getFaceAnnotationsList()) {
-                      faceAnnotationsList.add(annotation);
-                    }
-                }
-            }
+        return annotate(img, Feature.Type.FACE_DETECTION).getFaces();
+    }
 
-            return faceAnnotationsList;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Runs several Vision features on an image within a single request,
+     * so the image is uploaded only once.
+     *
+     * @param img image to annotate
+     * @param featureTypes features to detect, e.g. LABEL_DETECTION, FACE_DETECTION, DOCUMENT_TEXT_DETECTION
+     * @return labels, faces and OCR text blocks found on the image
+     */
+    public ImageAnnotation annotate(Image img, Feature.Type... featureTypes) {
+        return annotateBatch(Collections.singletonList(buildRequest(img, featureTypes))).get(0);
+    }
+
+    /**
+     * Sends all requests in one batchAnnotateImages call.
+     * Requests whose image and features were already annotated are served from the result cache and are not sent.
+     * The call takes one token of the Vision rate limiter per sent image.
+     * Downscaling, the call and reading of the response are timed as the vision.preprocess, vision.annotate
+     * and vision.response stages tagged with the features of the sent requests.
+     * The batch is traced as a vision.annotate span with the features, number of images served from the cache
+     * and sizes of the images before and after downscaling.
+     *
+     * @param requests annotate requests, see {@link #buildRequest(Image, Feature.Type...)}
+     * @return annotations in the order of the requests
+     */
+    public List<ImageAnnotation> annotateBatch(List<AnnotateImageRequest> requests) {
+        return annotateBatch(requests, limiter);
+    }
+
+    /**
+     * Same as {@link #annotateBatch(List)} within the Vision budget of batch verification,
+     * so batches do not take the rate tokens of interactive requests, see {@link RecognitionLimiters#visionBatch()}.
+     */
+    public List<ImageAnnotation> annotateBackgroundBatch(List<AnnotateImageRequest> requests) {
+        return annotateBatch(requests, batchLimiter);
+    }
+
+    @SuppressWarnings("try")
+    private List<ImageAnnotation> annotateBatch(List<AnnotateImageRequest> requests, AdaptiveLimiter limiter) {
+        Span span = tracer.nextSpan().name("vision.annotate").start();
+        try (Tracer.SpanInScope ignored = tracer.withSpanInScope(span)) {
+            return annotateBatch(requests, limiter, span);
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.finish();
         }
     }
 
-    public MrzData detectMrzForPassportOrFrDocId(Image img) {
+    private List<ImageAnnotation> annotateBatch(List<AnnotateImageRequest> requests, AdaptiveLimiter limiter, Span span) {
         try {
-            List<String> textBlocks = this.ocr(img);
+            ImageAnnotation[] annotations = new ImageAnnotation[requests.size()];
+            String[] cacheKeys = new String[requests.size()];
+
+            List<AnnotateImageRequest> misses = new ArrayList<>();
+            List<Integer> missIndexes = new ArrayList<>();
+            List<Double> missScales = new ArrayList<>();
+            long originalBytes = 0;
+            long sentBytes = 0;
+            long preprocessStart = System.nanoTime();
+            for (int i = 0; i < requests.size(); i++) {
+                cacheKeys[i] = cacheKey(requests.get(i));
+                annotations[i] = cacheKeys[i] != null ? resultCache.getIfPresent(cacheKeys[i]) : null;
+                if (annotations[i] == null) {
+                    AnnotateImageRequest sent = downscale(requests.get(i));
+                    misses.add(sent);
+                    missIndexes.add(i);
+                    missScales.add(scale(requests.get(i), sent));
+                    originalBytes += requests.get(i).getImage().getContent().size();
+                    sentBytes += sent.getImage().getContent().size();
+                }
+            }
+
+            List<Feature> requestedFeatures = new ArrayList<>();
+            requests.forEach(request -> requestedFeatures.addAll(request.getFeaturesList()));
+            span.tag("vision.features", StageTimer.features(requestedFeatures));
+            span.tag("vision.images", String.valueOf(requests.size()));
+            span.tag("vision.cached", String.valueOf(requests.size() - misses.size()));
+            span.tag("vision.original.bytes", String.valueOf(originalBytes));
+            span.tag("vision.sent.bytes", String.valueOf(sentBytes));
 
-            int mrzStart = this.detectPassportMrz(textBlocks);
-            if(mrzStart != -1) {
-                return this.mrzParser.parse(getMrz(textBlocks, mrzStart));
+            if (misses.isEmpty()) {
+                return Arrays.asList(annotations);
             }
 
-            mrzStart = this.detectFrenchIDMrz(textBlocks);
-            if(mrzStart != -1) {
-                return this.frenchMrzParserService.parse(getMrz(textBlocks, mrzStart));
+            List<Feature> features = new ArrayList<>();
+            misses.forEach(miss -> features.addAll(miss.getFeaturesList()));
+            String feature = StageTimer.features(features);
+            stageTimer.record("vision.preprocess", StageTimer.LOCAL, feature, StageTimer.SUCCESS, System.nanoTime() - preprocessStart);
+
+            BatchAnnotateImagesResponse response = stageTimer.record("vision.annotate", StageTimer.GOOGLE_VISION, feature,
+                                                                     () -> limiter.call(misses.size(), () -> vision.batchAnnotateImages(misses)));
+
+            long responseStart = System.nanoTime();
+            List<AnnotateImageResponse> responses = response.getResponsesList();
+            for (int i = 0; i < responses.size(); i++) {
+                AnnotateImageResponse res = responses.get(i);
+                if (res.hasError()) {
+                    log.error(res.getError().getMessage());
+                    throw new RuntimeException(res.getError().getMessage());
+                }
+
+                int index = missIndexes.get(i);
+                annotations[index] = toImageAnnotation(res, missScales.get(i));
+                if (cacheKeys[index] != null) {
+                    resultCache.put(cacheKeys[index], annotations[index]);
+                }
             }
+            stageTimer.record("vision.response", StageTimer.LOCAL, feature, StageTimer.SUCCESS, System.nanoTime() - responseStart);
 
-            return MrzData.builder().missing(true).build();
+            return Arrays.asList(annotations);
+        } catch (RejectedExecutionException e) {
+            // rate or concurrency limit reached, reported as 503
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private int detectPassportMrz(List<String> textBlocks) {
-        // detect start of MRZ block (the last one)
-        int mrzStart = -1;
-        for (int i = 0; i < textBlocks.size(); i++) {
-            final String block = textBlocks.get(i);
-            if (this.mrzParser.isStartOfMrz(block)) {
-                mrzStart = i;
-            }
+    public static AnnotateImageRequest buildRequest(Image img, Feature.Type... featureTypes) {
+        AnnotateImageRequest.Builder request = AnnotateImageRequest.newBuilder()
+                                                                   .setImage(img);
+        for (Feature.Type featureType : featureTypes) {
+            request.addFeatures(Feature.newBuilder().setType(featureType));
         }
-
-        return mrzStart;
+        return request.build();
     }
 
-    private int detectFrenchIDMrz(List<String> textBlocks) {
-        // detect start of MRZ block (the last one)
-        int mrzStart = -1;
-        for (int i = 0; i < textBlocks.size(); i++) {
-            final String block = textBlocks.get(i);
-            if (this.frenchMrzParserService.isStartOfMrz(block)) {
-                mrzStart = i;
+    /**
+     * Downscales the image when only label and/or face detection is requested.
+     * Text detection needs the full resolution, such requests are sent as they are.
+     */
+    private AnnotateImageRequest downscale(AnnotateImageRequest request) {
+        ByteString content = request.getImage().getContent();
+        if (content.isEmpty()) {
+            return request;
+        }
+
+        int maxDimension = 0;
+        for (Feature feature : request.getFeaturesList()) {
+            switch (feature.getType()) {
+                case LABEL_DETECTION:
+                    maxDimension = Math.max(maxDimension, imagePreprocessingService.getProperties().getLabelMaxDimension());
+                    break;
+                case FACE_DETECTION:
+                    maxDimension = Math.max(maxDimension, imagePreprocessingService.getProperties().getFaceMaxDimension());
+                    break;
+                default:
+                    return request;
             }
         }
 
-        return mrzStart;
+        ByteBuffer downscaled = imagePreprocessingService.downscale(content.asReadOnlyByteBuffer(), maxDimension);
+        return request.toBuilder()
+                      .setImage(Image.newBuilder().setContent(UnsafeByteOperations.unsafeWrap(downscaled)))
+                      .build();
     }
 
-    private String getMrz(List<String> textBlocks, int mrzStart) {
-        StringBuilder mrz = new StringBuilder();
-        for (int i = 0; i < textBlocks.size(); i++) {
-            final String block = textBlocks.get(i);
-            if (i >= mrzStart) {
-                mrz.append(block);
-            }
+    /**
+     * @return ratio of the original image size to the size of the image sent, 1 if it was sent as it is
+     */
+    private double scale(AnnotateImageRequest original, AnnotateImageRequest sent) {
+        if (original == sent) {
+            return 1;
         }
-        return mrz.toString();
+
+        Optional<Dimension> originalSize = imagePreprocessingService.dimensions(original.getImage().getContent().asReadOnlyByteBuffer());
+        Optional<Dimension> sentSize = imagePreprocessingService.dimensions(sent.getImage().getContent().asReadOnlyByteBuffer());
+        if (!originalSize.isPresent() || !sentSize.isPresent()) {
+            return 1;
+        }
+        return originalSize.get().getWidth() / sentSize.get().getWidth();
     }
 
-    private List<String> ocr(Image image) {
-        List<AnnotateImageRequest> requests = new ArrayList<>();
-        Feature documentTextDetection = Feature.newBuilder().setType(Feature.Type.DOCUMENT_TEXT_DETECTION).build();
-        AnnotateImageRequest request = AnnotateImageRequest.newBuilder()
-                                                           .addFeatures(documentTextDetection)
-                                                           .setImage(image)
-                                                           .build();
-        requests.add(request);
-
-        // Instantiates a client
-        try (ImageAnnotatorClient vision = ImageAnnotatorClient.create()) {
-            BatchAnnotateImagesResponse response = vision.batchAnnotateImages(requests);
-            List<AnnotateImageResponse> responses = response.getResponsesList();
+    // images referenced by URI are not cached, their content may change
+    private static String cacheKey(AnnotateImageRequest request) {
+        ByteString content = request.getImage().getContent();
+        if (content.isEmpty()) {
+            return null;
+        }
 
-            for (AnnotateImageResponse res : responses) {
-                if (res.hasError()) {
-                    log.error(res.getError().getMessage());
-                    throw new RuntimeException(res.getError().getMessage());
-                }
+        Object[] featureTypes = request.getFeaturesList()
+                                       .stream()
+                                       .map(Feature::getType)
+                                       .toArray();
+        return ContentHash.of(content.asReadOnlyByteBuffer(), featureTypes);
+    }
 
-                // For full list of available annotations, see http://g.co/cloud/vision/docs
-                TextAnnotation documentTextAnnotation = res.getFullTextAnnotation();
-                return detectTextBlocks(documentTextAnnotation);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * @param scale ratio of the original image size to the size of the annotated image,
+     *              face positions are converted back to the original image
+     */
+    private ImageAnnotation toImageAnnotation(AnnotateImageResponse res, double scale) {
+        List<ImageLabel> labels = res.getLabelAnnotationsList()
+                                     .stream()
+                                     .map(annotation -> new ImageLabel(annotation.getDescription(), annotation.getScore()))
+                                     .collect(Collectors.toList());
+
+        // For full list of available annotations, see http://g.co/cloud/vision/docs
+        List<String> textBlocks = res.hasFullTextAnnotation() ? OcrTextBlocks.of(res.getFullTextAnnotation()) : Collections.emptyList();
+        int textLength = res.hasFullTextAnnotation() ? res.getFullTextAnnotation().getTextBytes().size() : 0;
+
+        List<FaceAnnotation> faces = scale == 1
+                ? res.getFaceAnnotationsList()
+                : res.getFaceAnnotationsList().stream().map(face -> rescale(face, scale)).collect(Collectors.toList());
+
+        return new ImageAnnotation(labels, faces, textBlocks, textLength);
+    }
+
+    private static FaceAnnotation rescale(FaceAnnotation face, double scale) {
+        FaceAnnotation.Builder rescaled = face.toBuilder()
+                                              .setBoundingPoly(rescale(face.getBoundingPoly(), scale))
+                                              .setFdBoundingPoly(rescale(face.getFdBoundingPoly(), scale));
+        for (FaceAnnotation.Landmark.Builder landmark : rescaled.getLandmarksBuilderList()) {
+            landmark.getPositionBuilder()
+                    .setX((float) (landmark.getPosition().getX() * scale))
+                    .setY((float) (landmark.getPosition().getY() * scale));
         }
+        return rescaled.build();
+    }
 
-        return Collections.emptyList();
+    private static BoundingPoly rescale(BoundingPoly boundingPoly, double scale) {
+        BoundingPoly.Builder rescaled = boundingPoly.toBuilder();
+        for (Vertex.Builder vertex : rescaled.getVerticesBuilderList()) {
+            vertex.setX((int) Math.round(vertex.getX() * scale))
+                  .setY((int) Math.round(vertex.getY() * scale));
+        }
+        return rescaled.build();
     }
 
-    private List<String> detectTextBlocks(TextAnnotation documentTextAnnotation) {
-        List<String> blocks = new ArrayList<>();
-
-        for (Page page : documentTextAnnotation.getPagesList()) {
-            for (Block block : page.getBlocksList()) {
-                StringBuilder blockText = new StringBuilder();
-                for (Paragraph paragraph : block.getParagraphsList()) {
-                    StringBuilder paraText = new StringBuilder();
-                    for (Word word : paragraph.getWordsList()) {
-                        StringBuilder wordText = new StringBuilder();
-                        for (Symbol symbol : word.getSymbolsList()) {
-                            wordText.append(symbol.getText());
-                        }
-                        paraText.append(wordText);
-                    }
-
-                    blockText.append(paraText);
-                }
-                blocks.add(blockText.toString());
+    /**
+     * OCRs the image and parses the MRZ of any supported format, see {@link MrzFormatRegistry}.
+     * With MRZ region crop enabled only the locally located MRZ strip is sent for OCR,
+     * the whole image is used when the locator is not confident.
+     */
+    public MrzData detectMrzForPassportOrFrDocId(Image img) {
+        if (mrzProperties.isRegionCrop() && !img.getContent().isEmpty()) {
+            Optional<ByteBuffer> mrzStrip = mrzRegionLocator.locate(img.getContent().asReadOnlyByteBuffer());
+            if (mrzStrip.isPresent()) {
+                return detectMrz(this.ocr(Image.newBuilder().setContent(UnsafeByteOperations.unsafeWrap(mrzStrip.get())).build()));
             }
         }
+        return detectMrz(this.ocr(img));
+    }
 
-        return blocks;
+    /**
+     * Detects and parses the MRZ in text blocks already returned by DOCUMENT_TEXT_DETECTION.
+     * Timed as the mrz.detect stage with outcome found or missing, it includes building of the text blocks read.
+     *
+     * @param textBlocks OCR text blocks, see {@link ImageAnnotation#getTextBlocks()}
+     * @return parsed MRZ data, missing if no supported MRZ was found
+     */
+    public MrzData detectMrz(List<String> textBlocks) {
+        long start = System.nanoTime();
+        String outcome = StageTimer.ERROR;
+        try {
+            MrzData mrzData = mrzFormatRegistry.detect(textBlocks);
+            outcome = mrzData.isMissing() ? "missing" : "found";
+            return mrzData;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            stageTimer.record("mrz.detect", StageTimer.LOCAL, "text-blocks", outcome, System.nanoTime() - start);
+        }
+    }
+
+    private List<String> ocr(Image image) {
+        return annotate(image, Feature.Type.DOCUMENT_TEXT_DETECTION).getTextBlocks();
     }
 }
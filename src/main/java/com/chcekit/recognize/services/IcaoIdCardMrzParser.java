@@ -0,0 +1,189 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Common part of the ICAO 9303 identity card layouts TD1 and TD2.
+ * Both start with the document code I, A or C and the issuing state, and both have
+ * the birth date, sex and expiry date next to each other on the second line.
+ * Fields are located relative to these dates, so '<' fillers dropped by OCR shift the layout only locally.
+ */
+abstract class IcaoIdCardMrzParser implements MrzFormat {
+
+    private static final List<String> START_MARKERS = Arrays.asList("I", "A", "C");
+
+    // birth date, check digit, sex and expiry date
+    private static final int DATES_LENGTH = 14;
+
+    @Override
+    public List<String> getStartMarkers() {
+        return START_MARKERS;
+    }
+
+    @Override
+    public MrzData parse(String mrzData) {
+        try {
+            if (mrzData == null || mrzData.length() == 0) {
+                return MrzData.builder().input(mrzData).missing(true).build();
+            }
+
+            final String mrz = MrzNormalizer.normalize(mrzData);
+            if (!matches(mrz)) {
+                return MrzData.builder().input(mrzData).missing(true).build();
+            }
+
+            // fields are corrected in place
+            final char[] chars = mrz.toCharArray();
+            final MrzData.MrzDataBuilder result = MrzData.builder()
+                                                         .input(mrz)
+                                                         .passportCountryCode(field(chars, 2, 5));
+            parse(chars, indexOfDates(mrz), result);
+            return result.build();
+        } catch (Exception e) {
+            return MrzData.builder().input(mrzData).error(true).build();
+        }
+    }
+
+    /**
+     * Reads the layout specific fields.
+     *
+     * @param dates position of the birth date
+     */
+    abstract void parse(char[] mrz, int dates, MrzData.MrzDataBuilder result);
+
+    /**
+     * @return position of the birth date on the second line, -1 if there is none
+     */
+    static int indexOfDates(String mrz) {
+        for (int i = 5; i + DATES_LENGTH <= mrz.length(); i++) {
+            if (isDigits(mrz, i, i + 6) && isCheckDigit(mrz.charAt(i + 6)) && isSex(mrz.charAt(i + 7)) && isDigits(mrz, i + 8, i + DATES_LENGTH)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void readDocumentNumber(char[] mrz, int start, MrzData.MrzDataBuilder result) {
+        result.documentNumberConfidence(MrzCheckDigit.verifyAlphanumeric(mrz, start, start + 9, mrz[start + 9]))
+              .documentNumber(field(mrz, start, start + 9));
+    }
+
+    static void readDates(char[] mrz, int dates, MrzData.MrzDataBuilder result) {
+        final MrzFieldConfidence birthDateConfidence = MrzCheckDigit.verifyNumeric(mrz, dates, dates + 6, mrz[dates + 6]);
+        // OCR may cut the text off right after the expiry date
+        final int validDateCheck = dates + DATES_LENGTH < mrz.length ? mrz[dates + DATES_LENGTH] : -1;
+        final MrzFieldConfidence validDateConfidence = MrzCheckDigit.verifyNumeric(mrz, dates + 8, dates + DATES_LENGTH, validDateCheck);
+        final char sex = mrz[dates + 7];
+        result.sex(sex == 'M' ? "male" : sex == 'F' ? "female" : null);
+
+        if (MrzCheckDigit.isDate(mrz, dates)) {
+            result.birthDateConfidence(birthDateConfidence)
+                  .birthYear(((mrz[dates] - '0') * 10 + mrz[dates + 1] - '0' > 17 ? "19" : "20") + new String(mrz, dates, 2))
+                  .birthMonth(new String(mrz, dates + 2, 2))
+                  .birthDay(new String(mrz, dates + 4, 2));
+        } else {
+            result.birthDateConfidence(MrzFieldConfidence.INVALID);
+        }
+
+        if (MrzCheckDigit.isDate(mrz, dates + 8)) {
+            result.validDateConfidence(validDateConfidence)
+                  .validYear("20" + new String(mrz, dates + 8, 2))
+                  .validMonth(new String(mrz, dates + 10, 2))
+                  .validDay(new String(mrz, dates + 12, 2));
+        } else {
+            result.validDateConfidence(MrzFieldConfidence.INVALID);
+        }
+    }
+
+    /**
+     * Verifies the composite check digit over the given [start, end) ranges.
+     */
+    static MrzFieldConfidence verifyComposite(char[] mrz, int checkPosition, int... ranges) {
+        int sum = 0;
+        int offset = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int rangeSum = MrzCheckDigit.compute(mrz, ranges[i], ranges[i + 1], offset);
+            if (rangeSum == -1) {
+                return MrzFieldConfidence.INVALID;
+            }
+            sum += rangeSum;
+            offset += ranges[i + 1] - ranges[i];
+        }
+        return sum % 10 == MrzCheckDigit.digit(mrz[checkPosition]) ? MrzFieldConfidence.VALID : MrzFieldConfidence.INVALID;
+    }
+
+    /**
+     * Reads the primary identifier up to "<<" and then the secondary identifiers separated by single '<'.
+     */
+    static void readNames(char[] mrz, int start, MrzData.MrzDataBuilder result) {
+        int surnameEnd = start;
+        while (surnameEnd < mrz.length && !(mrz[surnameEnd] == '<' && (surnameEnd + 1 == mrz.length || mrz[surnameEnd + 1] == '<'))) {
+            surnameEnd++;
+        }
+        if (surnameEnd == start) {
+            return;
+        }
+        result.surname(new String(mrz, start, surnameEnd - start).replace('<', ' '));
+
+        int position = surnameEnd + 2;
+        final String[] names = {"", ""};
+        for (int i = 0; i < names.length && position < mrz.length; i++) {
+            int end = position;
+            while (end < mrz.length && isLetter(mrz[end])) {
+                end++;
+            }
+            names[i] = new String(mrz, position, end - position);
+            if (end + 1 >= mrz.length || mrz[end] != '<' || !isLetter(mrz[end + 1])) {
+                break;
+            }
+            position = end + 1;
+        }
+
+        if (!names[0].isEmpty()) {
+            result.givenNames(Arrays.asList(names));
+        }
+    }
+
+    /**
+     * @return the text between the positions without '<' fillers, null if the text is too short
+     */
+    static String field(char[] mrz, int start, int end) {
+        if (start < 0 || end > mrz.length) {
+            return null;
+        }
+        int trimmedEnd = end;
+        while (trimmedEnd > start && mrz[trimmedEnd - 1] == '<') {
+            trimmedEnd--;
+        }
+        return new String(mrz, start, trimmedEnd - start);
+    }
+
+    static boolean isDigits(String mrz, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(mrz.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+
+    static boolean isLetter(char character) {
+        return character >= 'A' && character <= 'Z';
+    }
+
+    private static boolean isCheckDigit(char character) {
+        return isDigit(character) || character == '<';
+    }
+
+    private static boolean isSex(char character) {
+        return character == 'M' || character == 'F' || character == 'X' || character == '<';
+    }
+}
@@ -0,0 +1,245 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Downscales and re-encodes images before they are sent to the recognition APIs.
+ * Label and face detection do not need the 4-12 MP of phone pictures, smaller uploads are faster and cheaper.
+ * Text detection (MRZ) should always get the original image.
+ * Images with an EXIF orientation other than upright are never re-encoded: ImageIO ignores the tag and the encoder drops it,
+ * so the APIs would get them sideways or upside down. Face positions found on these images also refer to the rotated frame.
+ */
+@Service
+@Slf4j
+public class ImagePreprocessingService {
+
+    private final ImagePreprocessingProperties properties;
+
+    public ImagePreprocessingService(ImagePreprocessingProperties properties) {
+        this.properties = properties;
+    }
+
+    public ImagePreprocessingProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Fits the image into maxDimension x maxDimension and re-encodes it as JPEG.
+     *
+     * @param content encoded image, its position is not modified
+     * @param maxDimension longest side of the result, 0 or less keeps the image as is
+     * @return downscaled JPEG, or the original content if it is small enough, preprocessing is disabled, it cannot be decoded
+     * or it is not stored upright
+     */
+    public ByteBuffer downscale(ByteBuffer content, int maxDimension) {
+        if (!properties.isEnabled() || maxDimension <= 0 || ExifOrientation.of(content) != ExifOrientation.NORMAL) {
+            return content;
+        }
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteBufferInputStream(content.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return content;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+
+                // dimensions come from the header, nothing is decoded yet
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int longestSide = Math.max(width, height);
+                if (longestSide <= maxDimension) {
+                    return content;
+                }
+
+                // let the decoder skip pixels instead of decoding the full resolution
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                int subsampling = longestSide / maxDimension;
+                if (subsampling > 1) {
+                    readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+
+                BufferedImage image = reader.read(0, readParam);
+                return ByteBuffer.wrap(encodeJpeg(scale(image, (double) maxDimension / longestSide, width, height)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot downscale image, sending the original: {}", e.getMessage());
+            return content;
+        }
+    }
+
+    /**
+     * Cuts a region out of the image and encodes it as JPEG.
+     * Only the region is decoded, not the whole image.
+     *
+     * @param content encoded image, its position is not modified
+     * @param region region in pixels of the image, limited to the image bounds
+     * @return cropped JPEG, or the original content if it cannot be decoded, the region is outside the image
+     * or the image is not stored upright
+     */
+    public ByteBuffer crop(ByteBuffer content, Rectangle region) {
+        if (ExifOrientation.of(content) != ExifOrientation.NORMAL) {
+            return content;
+        }
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteBufferInputStream(content.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return content;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+
+                Rectangle bounded = region.intersection(new Rectangle(reader.getWidth(0), reader.getHeight(0)));
+                if (bounded.isEmpty()) {
+                    return content;
+                }
+
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                readParam.setSourceRegion(bounded);
+                return ByteBuffer.wrap(encodeJpeg(toRgb(reader.read(0, readParam))));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot crop image, sending the original: {}", e.getMessage());
+            return content;
+        }
+    }
+
+    /**
+     * @param content encoded image, its position is not modified
+     * @return image dimensions read from the header, empty if the format is not supported
+     */
+    public Optional<Dimension> dimensions(ByteBuffer content) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteBufferInputStream(content.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, double ratio, int originalWidth, int originalHeight) {
+        int targetWidth = Math.max(1, (int) Math.round(originalWidth * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(originalHeight * ratio));
+
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    // JPEG has no alpha channel
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    /**
+     * @return decoded image, or null if the format is not supported
+     */
+    BufferedImage decode(ByteBuffer content) throws IOException {
+        return ImageIO.read(new ByteBufferInputStream(content.duplicate()));
+    }
+
+    ByteBuffer encode(BufferedImage image, float jpegQuality) throws IOException {
+        return ByteBuffer.wrap(encodeJpeg(image, jpegQuality));
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        return encodeJpeg(image, properties.getJpegQuality());
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float jpegQuality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(jpegQuality);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
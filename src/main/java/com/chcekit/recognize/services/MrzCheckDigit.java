@@ -0,0 +1,162 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzFieldConfidence;
+
+/**
+ * ICAO 9303 check digits with correction of common OCR confusions.
+ * Numeric fields can only contain digits, so letters OCR confuses with digits are replaced unconditionally.
+ * Alphanumeric fields are corrected only at positions their layout reserves for digits,
+ * by a single letter-to-digit replacement that matches the check digit.
+ * Fields are corrected in place.
+ */
+final class MrzCheckDigit {
+
+    private static final int[] WEIGHTS = {7, 3, 1};
+
+    // characters OCR confuses with each other: O/0, I/1, S/5, B/8
+    private static final String LETTERS = "OISB";
+    private static final String DIGITS = "0158";
+
+    // layout character of a position where only digits are allowed
+    static final char NUMERIC = '9';
+
+    private MrzCheckDigit() {
+    }
+
+    /**
+     * Replaces confusable letters of a numeric field with digits and verifies its check digit.
+     *
+     * @param checkCharacter check digit character, -1 if the text ended before it
+     */
+    static MrzFieldConfidence verifyNumeric(char[] chars, int start, int end, int checkCharacter) {
+        boolean corrected = false;
+        for (int i = start; i < end; i++) {
+            int letter = LETTERS.indexOf(chars[i]);
+            if (letter != -1) {
+                chars[i] = DIGITS.charAt(letter);
+                corrected = true;
+            }
+            if (chars[i] < '0' || chars[i] > '9') {
+                return MrzFieldConfidence.INVALID;
+            }
+        }
+
+        if (checkCharacter == -1) {
+            return MrzFieldConfidence.UNCHECKED;
+        }
+        if (compute(chars, start, end, 0) != digit(checkCharacter)) {
+            return MrzFieldConfidence.INVALID;
+        }
+        return corrected ? MrzFieldConfidence.CORRECTED : MrzFieldConfidence.VALID;
+    }
+
+    /**
+     * Verifies the check digit of an alphanumeric field without numeric positions, e.g. a passport number.
+     * The field is not corrected, any character may be a letter.
+     *
+     * @param checkCharacter check digit character, -1 if the text ended before it
+     */
+    static MrzFieldConfidence verifyAlphanumeric(char[] chars, int start, int end, int checkCharacter) {
+        return verifyAlphanumeric(chars, start, end, checkCharacter, null);
+    }
+
+    /**
+     * Verifies the check digit of an alphanumeric field, e.g. a card number.
+     * If it does not match and a single confusable letter stands where the layout allows only digits,
+     * the letter is replaced with its digit when that matches the check digit.
+     * A misread elsewhere, e.g. a digit read as another digit or a misread check digit, is reported as INVALID.
+     *
+     * @param layout         one character per field position, {@link #NUMERIC} where only digits are allowed,
+     *                       null if letters are allowed everywhere
+     * @param checkCharacter check digit character, -1 if the text ended before it
+     */
+    static MrzFieldConfidence verifyAlphanumeric(char[] chars, int start, int end, int checkCharacter, String layout) {
+        if (checkCharacter == -1) {
+            return MrzFieldConfidence.UNCHECKED;
+        }
+        final int check = digit(checkCharacter);
+        final int sum = compute(chars, start, end, 0);
+        if (sum == -1 || check == -1) {
+            return MrzFieldConfidence.INVALID;
+        }
+        if (sum == check) {
+            return MrzFieldConfidence.VALID;
+        }
+        if (layout == null) {
+            return MrzFieldConfidence.INVALID;
+        }
+
+        int misread = -1;
+        for (int i = start; i < end; i++) {
+            if (layout.charAt(i - start) == NUMERIC && LETTERS.indexOf(chars[i]) != -1) {
+                if (misread != -1) {
+                    return MrzFieldConfidence.INVALID;
+                }
+                misread = i;
+            }
+        }
+        if (misread == -1) {
+            return MrzFieldConfidence.INVALID;
+        }
+
+        final char digit = DIGITS.charAt(LETTERS.indexOf(chars[misread]));
+        final int weight = WEIGHTS[(misread - start) % WEIGHTS.length];
+        if (Math.floorMod(sum + (value(digit) - value(chars[misread])) * weight, 10) != check) {
+            return MrzFieldConfidence.INVALID;
+        }
+        chars[misread] = digit;
+        return MrzFieldConfidence.CORRECTED;
+    }
+
+    /**
+     * @param offset position of the first character within the checked sequence, decides its weight
+     * @return check digit of the characters, -1 if they are not MRZ characters
+     */
+    static int compute(char[] chars, int start, int end, int offset) {
+        int sum = 0;
+        for (int i = start; i < end; i++) {
+            int value = value(chars[i]);
+            if (value == -1) {
+                return -1;
+            }
+            sum += value * WEIGHTS[(offset + i - start) % WEIGHTS.length];
+        }
+        return sum % 10;
+    }
+
+    /**
+     * @return value of a check digit character, confusable letters count as digits
+     */
+    static int digit(int character) {
+        int letter = LETTERS.indexOf(character);
+        if (letter != -1) {
+            return DIGITS.charAt(letter) - '0';
+        }
+        if (character == '<') {
+            return 0;
+        }
+        return character >= '0' && character <= '9' ? character - '0' : -1;
+    }
+
+    /**
+     * @return true if yyMMdd characters are a possible calendar date
+     */
+    static boolean isDate(char[] chars, int start) {
+        int month = (chars[start + 2] - '0') * 10 + chars[start + 3] - '0';
+        int day = (chars[start + 4] - '0') * 10 + chars[start + 5] - '0';
+        if (month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        return day <= (month == 2 ? 29 : month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+    }
+
+    private static int value(char character) {
+        if (character >= '0' && character <= '9') {
+            return character - '0';
+        }
+        if (character >= 'A' && character <= 'Z') {
+            return character - 'A' + 10;
+        }
+        return character == '<' ? 0 : -1;
+    }
+}
@@ -0,0 +1,40 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+
+import java.util.List;
+
+/**
+ * Machine readable zone layout supported by {@link MrzFormatRegistry}.
+ * Implementations registered as Spring beans are picked up automatically,
+ * their {@link org.springframework.core.annotation.Order} decides which format is tried first when formats share a start marker.
+ */
+public interface MrzFormat {
+
+    /**
+     * @return short name of the format, used as a metric tag
+     */
+    String getName();
+
+    /**
+     * @return upper case prefixes the first MRZ line of this format starts with
+     */
+    List<String> getStartMarkers();
+
+    /**
+     * Checks the layout of a text starting with one of the start markers,
+     * formats sharing start markers use it to tell their documents apart.
+     *
+     * @param mrz normalized MRZ text
+     * @return true if the text can be parsed by this format
+     */
+    default boolean matches(String mrz) {
+        return true;
+    }
+
+    /**
+     * @param mrz MRZ text
+     * @return structured MRZ data
+     */
+    MrzData parse(String mrz);
+}
@@ -0,0 +1,103 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects and parses the MRZ of any registered {@link MrzFormat}.
+ * Start markers of all formats are kept in a prefix trie, so OCR text blocks are scanned once
+ * and only up to the length of the longest marker, regardless of the number of registered formats.
+ * Blocks are scanned from the bottom of the page, where the MRZ is, and the scan stops at the first MRZ found.
+ * Parsing is timed as the mrz.parse stage tagged with the name of the format, see {@link StageTimer}.
+ */
+@Component
+public class MrzFormatRegistry {
+
+    private final Node markers = new Node();
+    private final StageTimer stageTimer;
+
+    /**
+     * Registry reporting to the global meter registry.
+     */
+    public MrzFormatRegistry(List<MrzFormat> formats) {
+        this(formats, new StageTimer(Metrics.globalRegistry));
+    }
+
+    @Autowired
+    public MrzFormatRegistry(List<MrzFormat> formats, StageTimer stageTimer) {
+        this.stageTimer = stageTimer;
+        for (MrzFormat format : formats) {
+            for (String marker : format.getStartMarkers()) {
+                Node node = markers;
+                for (int i = 0; i < marker.length(); i++) {
+                    node = node.children.computeIfAbsent(marker.charAt(i), character -> new Node());
+                }
+                node.formats.add(format);
+            }
+        }
+    }
+
+    /**
+     * Finds the block where the MRZ starts and parses it together with the following blocks.
+     * Blocks are read from the last one up, blocks above the MRZ are not read at all.
+     * Formats sharing the start marker of a block are tried in their order.
+     *
+     * @param textBlocks OCR text blocks in reading order
+     * @return parsed MRZ data, missing if no supported MRZ was found
+     */
+    public MrzData detect(List<String> textBlocks) {
+        for (int i = textBlocks.size() - 1; i >= 0; i--) {
+            List<MrzFormat> matched = match(textBlocks.get(i));
+            if (matched.isEmpty()) {
+                continue;
+            }
+
+            String mrz = MrzNormalizer.normalize(join(textBlocks, i));
+            for (MrzFormat format : matched) {
+                if (format.matches(mrz)) {
+                    return stageTimer.record("mrz.parse", StageTimer.LOCAL, format.getName(), () -> format.parse(mrz));
+                }
+            }
+        }
+
+        return MrzData.builder().missing(true).build();
+    }
+
+    /**
+     * @return formats of the longest start marker the block begins with
+     */
+    private List<MrzFormat> match(String block) {
+        List<MrzFormat> matched = markers.formats;
+        Node node = markers;
+        for (int i = 0; i < block.length(); i++) {
+            node = node.children.get(Character.toUpperCase(block.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            if (!node.formats.isEmpty()) {
+                matched = node.formats;
+            }
+        }
+        return matched;
+    }
+
+    private static String join(List<String> textBlocks, int mrzStart) {
+        StringBuilder mrz = new StringBuilder();
+        for (int i = mrzStart; i < textBlocks.size(); i++) {
+            mrz.append(textBlocks.get(i));
+        }
+        return mrz.toString();
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<MrzFormat> formats = new ArrayList<>(1);
+    }
+}
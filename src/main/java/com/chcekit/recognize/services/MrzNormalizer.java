@@ -0,0 +1,48 @@
+package com.chcekit.recognize.services;
+
+import com.ibm.icu.text.Transliterator;
+
+/**
+ * Converts OCR text to the upper case ASCII alphabet of MRZ.
+ * Plain ASCII input, which is what OCR almost always returns for MRZ, is handled without ICU.
+ * The ICU compound transliterator is expensive to create and synchronizes internally,
+ * so every thread gets its own instance instead of sharing one between concurrent requests.
+ */
+final class MrzNormalizer {
+
+    static final String LATIN_TO_ASCII = "Any-Latin; NFD; [:M:] Remove; NFC; [^\\p{ASCII}] Remove";
+
+    private static final ThreadLocal<Transliterator> latinConverter = ThreadLocal.withInitial(() -> Transliterator.getInstance(LATIN_TO_ASCII));
+
+    private MrzNormalizer() {
+    }
+
+    /**
+     * @param text raw OCR text
+     * @return upper case ASCII text, the same instance if it is already normalized
+     */
+    static String normalize(String text) {
+        boolean upperCase = true;
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            if (character >= 128) {
+                return latinConverter.get().transform(text.toUpperCase());
+            }
+            if (character >= 'a' && character <= 'z') {
+                upperCase = false;
+            }
+        }
+
+        if (upperCase) {
+            return text;
+        }
+
+        char[] characters = text.toCharArray();
+        for (int i = 0; i < characters.length; i++) {
+            if (characters[i] >= 'a' && characters[i] <= 'z') {
+                characters[i] -= 'a' - 'A';
+            }
+        }
+        return new String(characters);
+    }
+}
@@ -1,21 +1,30 @@
 package com.chcekit.recognize.services;
 
 import com.chcekit.recognize.model.MrzData;
-import com.ibm.icu.text.Transliterator;
-import org.apache.commons.lang3.StringUtils;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
-import java.io.StringReader;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Service
-public class MrzParserService {
+@Order(1)
+public class MrzParserService implements MrzFormat {
 
     private static final String MRZ_START_MARKER = "P<";
 
-    private static final Transliterator latinConverter = Transliterator.getInstance("Any-Latin; NFD; [:M:] Remove; NFC; [^\\p{ASCII}] Remove");
 
+    @Override
+    public String getName() {
+        return "td3";
+    }
+
+    @Override
+    public List<String> getStartMarkers() {
+        return Collections.singletonList(MRZ_START_MARKER);
+    }
 
     /**
      * Checks whether a given line is a beginning of the MRZ section.
@@ -32,38 +41,39 @@ public class MrzParserService {
     /**
      * Ultra-forgiving MRZ parser.
      * Extracts surname, given names, document number, birth date, sex and validity date.
+     * Fields are set on the result as they are read, if the text ends early the fields read so far are returned.
      *
      * @param mrzData MRZ text
      * @return structured MRZ data
      */
+    @Override
     public MrzData parse(String mrzData) {
         try {
             if (mrzData == null || mrzData.length() == 0) {
                 return MrzData.builder().input(mrzData).missing(true).build();
             }
 
-            final String mrzDataUpper = mrzData.toUpperCase();
-            final String mrz = latinConverter.transform(mrzDataUpper);
+            final MrzScanner scanner = MrzScanner.of(mrzData);
 
-            if (!isStartOfMrz(mrz)) {
+            if (!isStartOfMrz(scanner.text())) {
                 return MrzData.builder().input(mrzData).missing(true).build();
             }
 
-            StringReader reader = new StringReader(mrz);
+            final MrzData.MrzDataBuilder result = MrzData.builder().input(scanner.text());
 
-            reader.skip(2); // skip P<
+            scanner.skip(2); // skip P<
 
             // read passport country
-            StringBuilder passportCountryBuilder = new StringBuilder();
+            final int passportCountryStart = scanner.mark();
             for(int i = 1; i <= 3; i++) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).missing(true).build();
+                    return result.missing(true).build();
                 }
-                passportCountryBuilder.append((char)character);
+                scanner.append(character);
             }
-            final String passportCountryCode = passportCountryBuilder.toString();
+            result.passportCountryCode(scanner.field(passportCountryStart, scanner.mark()));
 
             int delimiterStep = 0;
             int firstDelimiterPosition = 0;
@@ -71,23 +81,25 @@ public class MrzParserService {
 
             int nameCharactersIterator = 1;
 
-            StringBuilder surnameBuilder = new StringBuilder();
-            StringBuilder firstNameBuilder = new StringBuilder();
-            StringBuilder secondNameBuilder = new StringBuilder();
+            // surname, first name and second name are consecutive fields
+            final int surnameStart = scanner.mark();
+            int firstNameStart = -1;
+            int secondNameStart = -1;
             while(nameCharactersIterator <= 39) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 // names should always be present - fail fast if there is no data to process
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).build();
+                    return result.build();
                 }
 
                 if(delimiterStep == 0) {
                     if(character == '<') {
                         delimiterStep = 1;
                         firstDelimiterPosition = nameCharactersIterator;
+                        firstNameStart = scanner.mark();
                     } else {
-                        surnameBuilder.append((char)character);
+                        scanner.append(character);
                     }
                 } else if (delimiterStep == 1) {
                     // skip any '<' characters detected after the very first < with 3 characters threshold
@@ -97,12 +109,13 @@ public class MrzParserService {
                     }
                     // fill-in first name
                     else if (character != '<') {
-                        firstNameBuilder.append((char)character);
+                        scanner.append(character);
                     }
                     // detect delimited before the second name
                     else {
                         delimiterStep = 2;
                         secondDelimiterPosition = nameCharactersIterator;
+                        secondNameStart = scanner.mark();
                     }
                 } else if (delimiterStep == 2) {
                     // skip any '<' characters detected after the second < with 2 characters threshold
@@ -111,7 +124,7 @@ public class MrzParserService {
                         continue;
                     }
                     else if (character != '<') {
-                        secondNameBuilder.append((char)character);
+                        scanner.append(character);
                     }
                     else {
                         nameCharactersIterator++;
@@ -122,136 +135,159 @@ public class MrzParserService {
                 nameCharactersIterator++;
             }
 
+            final int namesEnd = scanner.mark();
+            final int surnameEnd = firstNameStart != -1 ? firstNameStart : namesEnd;
+            final int firstNameEnd = secondNameStart != -1 ? secondNameStart : namesEnd;
+
             // at least the surname is required
-            if(surnameBuilder.length() == 0) {
+            if(surnameEnd == surnameStart) {
                 // cannot detect surname
-                return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).build();
+                return result.build();
             }
 
-            final String surname = surnameBuilder.toString();
+            result.surname(scanner.field(surnameStart, surnameEnd));
 
-            if(firstNameBuilder.length() == 0) {
+            if(firstNameStart == -1 || firstNameEnd == firstNameStart) {
                 // cannot detect first name
-                return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).surname(surname).build();
+                return result.build();
             }
 
-            final String firstName = firstNameBuilder.toString();
-            final String secondName = secondNameBuilder.toString();
+            final String firstName = scanner.field(firstNameStart, firstNameEnd);
+            final String secondName = secondNameStart != -1 ? scanner.field(secondNameStart, namesEnd) : "";
             final List<String> givenNames = Arrays.asList(firstName, secondName);
+            result.givenNames(givenNames);
 
             // read passport number - it takes next 9 characters other than '<'
-            StringBuilder passportNumberBuilder = new StringBuilder();
+            final int passportNumberStart = scanner.mark();
             for(int i = 1; i <= 9;) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).surname(surname).givenNames(givenNames).build();
+                    return result.build();
                 }
 
                 if(character == '<') {
                     continue;
                 }
 
-                passportNumberBuilder.append((char)character);
+                scanner.append(character);
                 i++;
             }
 
-            final String passportNumber = passportNumberBuilder.toString();
+            int passportNumberCheck = scanner.read();
+            result.documentNumberConfidence(scanner.verifyAlphanumeric(passportNumberStart, passportNumberStart + 9, passportNumberCheck))
+                  .documentNumber(scanner.field(passportNumberStart, passportNumberStart + 9));
 
-            reader.skip(1); // skip control number
+            if(passportNumberCheck == -1) {
+                return result.build();
+            }
+            scanner.appendCheckDigit(passportNumberCheck);
 
             // read nationality
-            StringBuilder nationalityBuilder = new StringBuilder();
+            final int nationalityStart = scanner.mark();
             for(int i = 1; i <= 3; i++) {
-                int character = reader.read();
+                int character = scanner.read();
 
                 if(character == -1) {
-                    return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).surname(surname).givenNames(givenNames).documentNumber(passportNumber).build();
+                    return result.build();
                 }
-                nationalityBuilder.append((char)character);
+                scanner.append(character);
             }
-            final String nationalityCode = nationalityBuilder.toString();
+            result.nationalityCode(scanner.field(nationalityStart, scanner.mark()));
 
             // read birth date
-            StringBuilder birthDateBuilder = new StringBuilder();
-            for(int i = 1; i <= 6; i++) {
-                int character = reader.read();
-
-                if(character == -1) {
-                    return MrzData.builder().input(mrz).passportCountryCode(passportCountryCode).surname(surname).givenNames(givenNames).documentNumber(passportNumber).nationalityCode(nationalityCode).build();
-                }
-                birthDateBuilder.append((char)character);
+            final int birthDateStart = scanner.mark();
+            if(!readDate(scanner)) {
+                return result.build();
             }
 
+            int birthDateCheck = scanner.read();
+            result.birthDateConfidence(scanner.verifyDate(birthDateStart, birthDateCheck));
 
-            String birthYear = birthDateBuilder.substring(0, 2);
-
-            try {
-                birthYear = Integer.parseInt(birthYear) > 17 ? "19" + birthYear : "20" + birthYear;
-            } catch(NumberFormatException e) {
-                birthYear = null;            }
-
-            String birthMonth = birthDateBuilder.substring(2, 4);
-            String birthDay = birthDateBuilder.substring(4, 6);
-
-            if(!StringUtils.isNumeric(birthYear) || !StringUtils.isNumeric(birthMonth) || !StringUtils.isNumeric(birthDay)) {
-                birthYear = birthMonth = birthDay = null;
+            if(scanner.isDate(birthDateStart)) {
+                result.birthYear((scanner.twoDigits(birthDateStart) > 17 ? "19" : "20") + scanner.field(birthDateStart, birthDateStart + 2))
+                      .birthMonth(scanner.field(birthDateStart + 2, birthDateStart + 4))
+                      .birthDay(scanner.field(birthDateStart + 4, birthDateStart + 6));
             }
 
-            reader.skip(1); // skip control number
+            if(birthDateCheck == -1) {
+                return result.build();
+            }
+            scanner.appendCheckDigit(birthDateCheck);
 
             // read sex
-            int sexRaw = reader.read();
+            int sexRaw = scanner.read();
 
             if(sexRaw == -1) {
-                return MrzData.builder()
-                        .input(mrz)
-                        .passportCountryCode(passportCountryCode)
-                        .surname(surname).givenNames(givenNames)
-                        .documentNumber(passportNumber).nationalityCode(nationalityCode)
-                        .birthYear(birthYear).birthMonth(birthMonth).birthDay(birthDay)
-                        .build();
+                return result.build();
             }
 
-            final String sex = sexRaw == 'M' ? "male" : "female";
+            result.sex(sexRaw == 'M' ? "male" : "female");
 
             // read document validity date
-            StringBuilder validityDateBuilder = new StringBuilder();
-            for(int i = 1; i <= 6; i++) {
-                int character = reader.read();
+            final int validityDateStart = scanner.mark();
+            if(!readDate(scanner)) {
+                return result.build();
+            }
+
+            int validityDateCheck = scanner.read();
+            result.validDateConfidence(scanner.verifyDate(validityDateStart, validityDateCheck));
+
+            if(scanner.isDate(validityDateStart)) {
+                result.validYear("20" + scanner.field(validityDateStart, validityDateStart + 2))
+                      .validMonth(scanner.field(validityDateStart + 2, validityDateStart + 4))
+                      .validDay(scanner.field(validityDateStart + 4, validityDateStart + 6));
+            }
+
+            if(validityDateCheck == -1) {
+                return result.build();
+            }
+            scanner.appendCheckDigit(validityDateCheck);
+
+            // personal number with its check digit and the composite check digit of the second line
+            for(int i = 1; i <= 15; i++) {
+                int character = scanner.read();
 
                 if(character == -1) {
-                    return MrzData.builder()
-                            .input(mrz)
-                            .passportCountryCode(passportCountryCode)
-                            .surname(surname).givenNames(givenNames)
-                            .documentNumber(passportNumber).nationalityCode(nationalityCode)
-                            .birthYear(birthYear).birthMonth(birthMonth).birthDay(birthDay)
-                            .sex(sex)
-                            .build();
+                    return result.build();
                 }
-                validityDateBuilder.append((char)character);
-            }
 
-            String validYear = "20" + validityDateBuilder.substring(0, 2);
-            String validMonth = validityDateBuilder.substring(2, 4);
-            String validDay = validityDateBuilder.substring(4, 6);
+                if(i == 15) {
+                    scanner.appendCheckDigit(character);
+                } else {
+                    scanner.append(character);
+                }
+            }
 
-            if(!StringUtils.isNumeric(validYear) || !StringUtils.isNumeric(validMonth) || !StringUtils.isNumeric(validDay)) {
-                validYear = validMonth = validDay = null;
+            int compositeCheck = scanner.read();
+            if(compositeCheck != -1) {
+                // document number, birth date, validity date and personal number with their check digits, sex excluded
+                int documentNumberSum = scanner.checkSum(passportNumberStart, passportNumberStart + 10, 0);
+                int datesSum = scanner.checkSum(birthDateStart, scanner.mark(), 10);
+                boolean valid = documentNumberSum != -1 && datesSum != -1 && (documentNumberSum + datesSum) % 10 == MrzCheckDigit.digit(compositeCheck);
+                result.compositeConfidence(valid ? MrzFieldConfidence.VALID : MrzFieldConfidence.INVALID);
             }
 
-            return MrzData.builder()
-                    .input(mrz)
-                    .passportCountryCode(passportCountryCode)
-                    .surname(surname).givenNames(givenNames)
-                    .documentNumber(passportNumber).nationalityCode(nationalityCode)
-                    .birthYear(birthYear).birthMonth(birthMonth).birthDay(birthDay)
-                    .sex(sex)
-                    .validYear(validYear).validMonth(validMonth).validDay(validDay)
-                    .build();
+            return result.build();
         } catch (Exception e) {
             return MrzData.builder().input(mrzData).error(true).build();
         }
     }
+
+    /**
+     * Reads 6 characters of a yyMMdd date into the scanner fields.
+     *
+     * @return false if the text ended before
+     */
+    private static boolean readDate(MrzScanner scanner) {
+        for(int i = 1; i <= 6; i++) {
+            int character = scanner.read();
+
+            if(character == -1) {
+                return false;
+            }
+            scanner.append(character);
+        }
+        return true;
+    }
 }
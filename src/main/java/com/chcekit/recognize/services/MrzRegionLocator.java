@@ -0,0 +1,182 @@
+package com.chcekit.recognize.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Cheap local locator of the MRZ band of an identity document.
+ * Looks at the bottom part of the image for a block of 2-3 text lines spanning most of the width,
+ * using the horizontal luminance gradient of each row as a measure of "textness".
+ * Only the located strip needs to be sent for document text detection.
+ */
+@Service
+@Slf4j
+public class MrzRegionLocator {
+
+    // MRZ is searched for in this bottom part of the image
+    private static final double SEARCH_FRACTION = 0.5;
+
+    // accepted height of the MRZ band relative to the image height
+    private static final double MIN_BAND_FRACTION = 0.04;
+    private static final double MAX_BAND_FRACTION = 0.3;
+
+    // gaps between MRZ lines up to this multiple of the line height belong to the band
+    private static final double MAX_LINE_GAP_RATIO = 1.5;
+
+    // share of the band width that has to contain text
+    private static final double MIN_HORIZONTAL_COVERAGE = 0.6;
+
+    private static final int MIN_LINES = 2;
+    private static final int MAX_LINES = 3;
+
+    // number of samples per row, enough to see OCR-B strokes
+    private static final int SAMPLES_PER_ROW = 600;
+
+    private static final int COVERAGE_BINS = 20;
+
+    private static final double PADDING_FRACTION = 0.02;
+
+    private static final float STRIP_JPEG_QUALITY = 0.95f;
+
+    private final ImagePreprocessingService imagePreprocessingService;
+
+    public MrzRegionLocator(ImagePreprocessingService imagePreprocessingService) {
+        this.imagePreprocessingService = imagePreprocessingService;
+    }
+
+    /**
+     * @param content encoded document image
+     * @return grayscale JPEG of the MRZ band, or empty if the locator is not confident about its position
+     */
+    public Optional<ByteBuffer> locate(ByteBuffer content) {
+        try {
+            BufferedImage image = imagePreprocessingService.decode(content);
+            if (image == null) {
+                return Optional.empty();
+            }
+
+            return locateBand(image).map(band -> crop(image, band[0], band[1]));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot locate MRZ band: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return top and bottom row (exclusive) of the MRZ band
+     */
+    Optional<int[]> locateBand(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int top = (int) (height * (1 - SEARCH_FRACTION));
+        int step = Math.max(1, width / SAMPLES_PER_ROW);
+
+        double[] rowEnergy = new double[height - top];
+        double sum = 0;
+        for (int y = top; y < height; y++) {
+            rowEnergy[y - top] = rowEnergy(image, y, 0, width, step);
+            sum += rowEnergy[y - top];
+        }
+        double threshold = sum / rowEnergy.length * 1.5;
+
+        // walk from the bottom up, the first text block is the MRZ candidate
+        int bandBottom = -1;
+        int bandTop = -1;
+        int lines = 0;
+        int lineHeight = 0;
+        int gap = 0;
+        boolean inLine = false;
+        for (int i = rowEnergy.length - 1; i >= 0; i--) {
+            boolean text = rowEnergy[i] > threshold;
+            if (text) {
+                if (bandBottom == -1) {
+                    bandBottom = i + 1;
+                }
+                if (!inLine) {
+                    lines++;
+                    inLine = true;
+                }
+                if (lines == 1) {
+                    lineHeight++;
+                }
+                bandTop = i;
+                gap = 0;
+            } else if (bandBottom != -1) {
+                inLine = false;
+                if (++gap > Math.max(2, lineHeight * MAX_LINE_GAP_RATIO)) {
+                    break;
+                }
+            }
+        }
+
+        if (bandBottom == -1) {
+            return Optional.empty();
+        }
+
+        int bandHeight = bandBottom - bandTop;
+        if (bandHeight < height * MIN_BAND_FRACTION || bandHeight > height * MAX_BAND_FRACTION || lines < MIN_LINES || lines > MAX_LINES) {
+            return Optional.empty();
+        }
+
+        // MRZ lines span nearly the whole document width
+        int binWidth = width / COVERAGE_BINS;
+        int coveredBins = 0;
+        for (int bin = 0; bin < COVERAGE_BINS; bin++) {
+            double binEnergy = 0;
+            for (int y = top + bandTop; y < top + bandBottom; y++) {
+                binEnergy += rowEnergy(image, y, bin * binWidth, (bin + 1) * binWidth, step);
+            }
+            if (binEnergy / bandHeight > threshold / 2) {
+                coveredBins++;
+            }
+        }
+        if (coveredBins < COVERAGE_BINS * MIN_HORIZONTAL_COVERAGE) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new int[]{top + bandTop, top + bandBottom});
+    }
+
+    private static double rowEnergy(BufferedImage image, int y, int from, int to, int step) {
+        double energy = 0;
+        int samples = 0;
+        int previous = luminance(image.getRGB(from, y));
+        for (int x = from + step; x < to; x += step) {
+            int current = luminance(image.getRGB(x, y));
+            energy += Math.abs(current - previous);
+            previous = current;
+            samples++;
+        }
+        return samples == 0 ? 0 : energy / samples;
+    }
+
+    private static int luminance(int rgb) {
+        return (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+    }
+
+    private ByteBuffer crop(BufferedImage image, int bandTop, int bandBottom) {
+        int padding = (int) (image.getHeight() * PADDING_FRACTION);
+        int y = Math.max(0, bandTop - padding);
+        int height = Math.min(image.getHeight(), bandBottom + padding) - y;
+
+        BufferedImage strip = new BufferedImage(image.getWidth(), height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = strip.createGraphics();
+        try {
+            graphics.drawImage(image.getSubimage(0, y, image.getWidth(), height), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        try {
+            return imagePreprocessingService.encode(strip, STRIP_JPEG_QUALITY);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
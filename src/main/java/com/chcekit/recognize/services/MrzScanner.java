@@ -0,0 +1,152 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzFieldConfidence;
+
+/**
+ * Single-pass reader over normalized MRZ characters shared by the MRZ parsers.
+ * Characters of the fields being read are collected into one buffer and fields are its consecutive slices,
+ * so parsing needs no intermediate readers or builders - strings are created only for the final values.
+ */
+final class MrzScanner {
+
+    private final String text;
+    private int position;
+
+    private final char[] fields;
+    private int fieldsLength;
+
+    private MrzScanner(String text) {
+        this.text = text;
+        this.fields = new char[text.length()];
+    }
+
+    /**
+     * @param mrzData raw OCR text, not empty
+     * @return scanner over upper case ASCII characters of the text
+     */
+    static MrzScanner of(String mrzData) {
+        return new MrzScanner(MrzNormalizer.normalize(mrzData));
+    }
+
+    /**
+     * @return normalized MRZ text
+     */
+    String text() {
+        return text;
+    }
+
+    boolean startsWith(String prefix) {
+        return text.startsWith(prefix);
+    }
+
+    /**
+     * @return next character or -1 at the end of the text
+     */
+    int read() {
+        return position < text.length() ? text.charAt(position++) : -1;
+    }
+
+    /**
+     * @return number of characters read or skipped so far
+     */
+    int position() {
+        return position;
+    }
+
+    void skip(int count) {
+        position = Math.min(text.length(), position + count);
+    }
+
+    /**
+     * @return start of the next field in the field buffer
+     */
+    int mark() {
+        return fieldsLength;
+    }
+
+    void append(int character) {
+        fields[fieldsLength++] = (char) character;
+    }
+
+    /**
+     * Appends a check digit, confusable letters are stored as the digits they stand for.
+     */
+    void appendCheckDigit(int character) {
+        int digit = MrzCheckDigit.digit(character);
+        append(digit != -1 ? '0' + digit : character);
+    }
+
+    /**
+     * Copies field characters, e.g. corrected ones, over a copy of the text.
+     */
+    void copy(int start, int end, char[] target, int targetStart) {
+        System.arraycopy(fields, start, target, targetStart, end - start);
+    }
+
+    String field(int start, int end) {
+        return new String(fields, start, end - start);
+    }
+
+    /**
+     * @return true if all characters of the field are ASCII digits
+     */
+    boolean isDigits(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (fields[i] < '0' || fields[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int twoDigits(int start) {
+        return (fields[start] - '0') * 10 + (fields[start + 1] - '0');
+    }
+
+    /**
+     * Verifies a numeric field against its check digit, see {@link MrzCheckDigit#verifyNumeric(char[], int, int, int)}.
+     */
+    MrzFieldConfidence verifyNumeric(int start, int end, int checkCharacter) {
+        return MrzCheckDigit.verifyNumeric(fields, start, end, checkCharacter);
+    }
+
+    /**
+     * Verifies an alphanumeric field against its check digit, see {@link MrzCheckDigit#verifyAlphanumeric(char[], int, int, int)}.
+     */
+    MrzFieldConfidence verifyAlphanumeric(int start, int end, int checkCharacter) {
+        return MrzCheckDigit.verifyAlphanumeric(fields, start, end, checkCharacter);
+    }
+
+    /**
+     * Verifies an alphanumeric field with numeric positions against its check digit,
+     * see {@link MrzCheckDigit#verifyAlphanumeric(char[], int, int, int, String)}.
+     */
+    MrzFieldConfidence verifyAlphanumeric(int start, int end, int checkCharacter, String layout) {
+        return MrzCheckDigit.verifyAlphanumeric(fields, start, end, checkCharacter, layout);
+    }
+
+    /**
+     * @param offset position of the first character within the checked sequence
+     * @return weighted sum of the field characters modulo 10
+     */
+    int checkSum(int start, int end, int offset) {
+        return MrzCheckDigit.compute(fields, start, end, offset);
+    }
+
+    /**
+     * Verifies a yyMMdd field against its check digit.
+     *
+     * @return confidence of the date, INVALID if it is not a calendar date
+     */
+    MrzFieldConfidence verifyDate(int start, int checkCharacter) {
+        MrzFieldConfidence confidence = verifyNumeric(start, start + 6, checkCharacter);
+        return isDate(start) ? confidence : MrzFieldConfidence.INVALID;
+    }
+
+    /**
+     * @return true if the yyMMdd field has digits of a possible calendar date
+     */
+    boolean isDate(int start) {
+        return isDigits(start, start + 6) && MrzCheckDigit.isDate(fields, start);
+    }
+}
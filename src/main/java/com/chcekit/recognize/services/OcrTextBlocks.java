@@ -0,0 +1,65 @@
+package com.chcekit.recognize.services;
+
+import com.google.cloud.vision.v1.Block;
+import com.google.cloud.vision.v1.Page;
+import com.google.cloud.vision.v1.Paragraph;
+import com.google.cloud.vision.v1.Symbol;
+import com.google.cloud.vision.v1.TextAnnotation;
+import com.google.cloud.vision.v1.Word;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text blocks of a Vision document text annotation in reading order.
+ * A block is turned into a string only when it is read, so a caller walking the blocks
+ * from the bottom of the page to the MRZ never builds the text above it.
+ * Built blocks are kept, the same string may be built twice when read concurrently for the first time.
+ * The list holds the Vision blocks, the result cache weighs annotations by their text length.
+ */
+final class OcrTextBlocks extends AbstractList<String> {
+
+    private final List<Block> blocks;
+    private final String[] texts;
+
+    private OcrTextBlocks(List<Block> blocks) {
+        this.blocks = blocks;
+        this.texts = new String[blocks.size()];
+    }
+
+    static OcrTextBlocks of(TextAnnotation documentTextAnnotation) {
+        List<Block> blocks = new ArrayList<>();
+        for (Page page : documentTextAnnotation.getPagesList()) {
+            blocks.addAll(page.getBlocksList());
+        }
+        return new OcrTextBlocks(blocks);
+    }
+
+    @Override
+    public String get(int index) {
+        String text = texts[index];
+        if (text == null) {
+            text = build(blocks.get(index));
+            texts[index] = text;
+        }
+        return text;
+    }
+
+    @Override
+    public int size() {
+        return blocks.size();
+    }
+
+    private static String build(Block block) {
+        StringBuilder blockText = new StringBuilder();
+        for (Paragraph paragraph : block.getParagraphsList()) {
+            for (Word word : paragraph.getWordsList()) {
+                for (Symbol symbol : word.getSymbolsList()) {
+                    blockText.append(symbol.getText());
+                }
+            }
+        }
+        return blockText.toString();
+    }
+}
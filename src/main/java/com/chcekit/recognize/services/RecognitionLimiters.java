@@ -0,0 +1,57 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.RateLimitProperties;
+import com.google.api.gax.rpc.DeadlineExceededException;
+import com.google.api.gax.rpc.ResourceExhaustedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limiters of the external API operations, one per provider and operation.
+ */
+@Component
+public class RecognitionLimiters {
+
+    private final AdaptiveLimiter vision;
+    private final AdaptiveLimiter visionBatch;
+    private final AdaptiveLimiter rekognition;
+
+    public RecognitionLimiters(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.vision = new AdaptiveLimiter("vision.batchAnnotateImages", properties, properties.getVision(),
+                                          RecognitionLimiters::isVisionOverload, meterRegistry);
+        this.visionBatch = new AdaptiveLimiter("vision.batchAnnotateImages.batch", properties, properties.getVisionBatch(),
+                                               RecognitionLimiters::isVisionOverload, meterRegistry);
+        this.rekognition = new AdaptiveLimiter("rekognition.compareFaces", properties, properties.getRekognition(),
+                                               RecognitionLimiters::isRekognitionOverload, meterRegistry);
+    }
+
+    public AdaptiveLimiter vision() {
+        return vision;
+    }
+
+    /**
+     * @return limiter of the Vision calls of batch verification, with a budget of its own
+     */
+    public AdaptiveLimiter visionBatch() {
+        return visionBatch;
+    }
+
+    public AdaptiveLimiter rekognition() {
+        return rekognition;
+    }
+
+    // quota exceeded is reported as RESOURCE_EXHAUSTED, the exception may be wrapped
+    private static boolean isVisionOverload(Throwable failure) {
+        for (Throwable e = failure; e != null; e = e.getCause()) {
+            if (e instanceof ResourceExhaustedException || e instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRekognitionOverload(Throwable failure) {
+        FaceComparisonException.Reason reason = FaceComparisonException.reason(failure);
+        return reason == FaceComparisonException.Reason.THROTTLED || reason == FaceComparisonException.Reason.TIMEOUT;
+    }
+}
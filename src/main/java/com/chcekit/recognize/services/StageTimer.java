@@ -0,0 +1,79 @@
+package com.chcekit.recognize.services;
+
+import com.google.cloud.vision.v1.Feature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency of the stages of the recognition pipeline as the recognition.stage timer, tagged by
+ * stage - e.g. vision.annotate, rekognition.compare-faces, mrz.parse,
+ * provider - google-vision, aws-rekognition or local for work done in this service,
+ * feature - Vision features, MRZ format etc.,
+ * outcome - success, error, rejected by a rate limiter or a stage specific result.
+ * Percentiles and histograms are configured with management.metrics.distribution.*.recognition.stage.
+ */
+@Component
+public class StageTimer {
+
+    public static final String METRIC = "recognition.stage";
+
+    public static final String GOOGLE_VISION = "google-vision";
+    public static final String AWS_REKOGNITION = "aws-rekognition";
+    public static final String LOCAL = "local";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    public static final String REJECTED = "rejected";
+
+    private final MeterRegistry meterRegistry;
+
+    public StageTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs the stage and records its latency, the outcome is success or the kind of failure.
+     */
+    public <T> T record(String stage, String provider, String feature, Supplier<T> call) {
+        long start = System.nanoTime();
+        String outcome = ERROR;
+        try {
+            T result = call.get();
+            outcome = SUCCESS;
+            return result;
+        } catch (RejectedExecutionException e) {
+            outcome = REJECTED;
+            throw e;
+        } finally {
+            record(stage, provider, feature, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a stage measured by the caller, e.g. one completed asynchronously.
+     *
+     * @param nanos latency from {@link System#nanoTime()} differences
+     */
+    public void record(String stage, String provider, String feature, String outcome, long nanos) {
+        meterRegistry.timer(METRIC, Tags.of("stage", stage, "provider", provider, "feature", feature, "outcome", outcome))
+                     .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Vision features as a tag value, e.g. face+label, the same for any order of the features
+     */
+    public static String features(Collection<Feature> features) {
+        TreeSet<String> names = new TreeSet<>();
+        for (Feature feature : features) {
+            names.add(feature.getType().name().toLowerCase().replace("_detection", ""));
+        }
+        return names.isEmpty() ? "none" : String.join("+", names);
+    }
+}
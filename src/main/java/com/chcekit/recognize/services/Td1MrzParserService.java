@@ -0,0 +1,64 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+/**
+ * ICAO TD1 identity card MRZ, 3 lines of 30 characters:
+ * document code, issuing state, document number and optional data;
+ * birth date, sex, expiry date, nationality and optional data; names.
+ */
+@Service
+@Order(3)
+public class Td1MrzParserService extends IcaoIdCardMrzParser {
+
+    // the second line starts at position 30, fillers of the first line may be lost by OCR
+    private static final int DATES_POSITION = 30;
+
+    // document code, issuing state, document number and its check digit precede the second line even without fillers
+    private static final int FIRST_LINE_MIN_LENGTH = 15;
+
+    @Override
+    public String getName() {
+        return "td1";
+    }
+
+    /**
+     * The document number with its check digit ends the first 15 characters,
+     * TD2 has the names there.
+     * The birth date cannot start before the end of these fields. A TD3 passport has it at position 13 of its second line,
+     * so that line is not taken for a TD1 MRZ when OCR puts it in its own block and it starts with I, A or C.
+     */
+    @Override
+    public boolean matches(String mrz) {
+        if (mrz.length() < FIRST_LINE_MIN_LENGTH || !isDigit(mrz.charAt(FIRST_LINE_MIN_LENGTH - 1))) {
+            return false;
+        }
+        final int dates = indexOfDates(mrz);
+        return dates >= FIRST_LINE_MIN_LENGTH && dates <= DATES_POSITION + 5;
+    }
+
+    @Override
+    void parse(char[] mrz, int dates, MrzData.MrzDataBuilder result) {
+        readDocumentNumber(mrz, 5, result);
+
+        if (dates + 18 > mrz.length) {
+            return;
+        }
+        readDates(mrz, dates, result);
+        result.nationalityCode(field(mrz, dates + 15, dates + 18));
+
+        // the composite check digit covers the first line from the document number, its position is known only for complete lines
+        if (dates == DATES_POSITION && dates + 30 <= mrz.length) {
+            result.compositeConfidence(verifyComposite(mrz, dates + 29, 5, dates, dates, dates + 7, dates + 8, dates + 15, dates + 18, dates + 29));
+        }
+
+        // names follow the optional data and the composite check digit
+        int namesStart = dates + 18;
+        while (namesStart < mrz.length && !isLetter(mrz[namesStart])) {
+            namesStart++;
+        }
+        readNames(mrz, namesStart, result);
+    }
+}
@@ -0,0 +1,42 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+/**
+ * ICAO TD2 identity card MRZ, 2 lines of 36 characters:
+ * document code, issuing state and names;
+ * document number, nationality, birth date, sex, expiry date and optional data.
+ */
+@Service
+@Order(4)
+public class Td2MrzParserService extends IcaoIdCardMrzParser {
+
+    @Override
+    public String getName() {
+        return "td2";
+    }
+
+    /**
+     * Names follow the issuing state, TD1 has the document number check digit at the end of the first 15 characters.
+     */
+    @Override
+    public boolean matches(String mrz) {
+        return mrz.length() >= 15 && !isDigit(mrz.charAt(14)) && indexOfDates(mrz) >= 18;
+    }
+
+    @Override
+    void parse(char[] mrz, int dates, MrzData.MrzDataBuilder result) {
+        readNames(mrz, 5, result);
+
+        // document number, check digit and nationality precede the birth date
+        readDocumentNumber(mrz, dates - 13, result);
+        result.nationalityCode(field(mrz, dates - 3, dates));
+        readDates(mrz, dates, result);
+
+        if (dates + 23 <= mrz.length) {
+            result.compositeConfidence(verifyComposite(mrz, dates + 22, dates - 13, dates - 3, dates, dates + 7, dates + 8, dates + 22));
+        }
+    }
+}
@@ -17,7 +17,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -53,9 +55,13 @@ public class FaceRecognizeControllerTest {
     MockMultipartFile id_back = new MockMultipartFile("id_back", files.get("id_doc_pl_back.jpg")
                                                                       .getBytes());
 
-    MvcResult mvcResult = this.mockMvc.perform(multipart("/api/collect").file(selfie)
-                                                                        .file(id_front)
-                                                                        .file(id_back))
+    MvcResult asyncResult = this.mockMvc.perform(multipart("/api/collect").file(selfie)
+                                                                          .file(id_front)
+                                                                          .file(id_back))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+
+    MvcResult mvcResult = this.mockMvc.perform(asyncDispatch(asyncResult))
                                       .andExpect(status().isOk())
                                       .andReturn();
 
@@ -67,6 +73,9 @@ public class FaceRecognizeControllerTest {
                                               .containsIgnoringCase("\"surprise\":\"VERY_UNLIKELY\"")
                                               .containsIgnoringCase("\"idFrontDocumentDetected\":true")
                                               .containsIgnoringCase("\"idBackDocumentDetected\":true")
-                                              .containsIgnoringCase("\"mrz\":\"MrzData(input=IDFRA00000<<<<<<<<<<<<<<<<<<<<7640160306730326262LAURENCE<<DANI6616667F6AALAMYSTOCKPHOTODWTM1KWWW.ALAMY.COM, error=false, missing=false, passportCountryCode=null, nationalityCode=FRA, surname=00000, givenNames=[LAURENCE, DANI], documentNumber=null, birthYear=1966, birthMonth=16, birthDay=66, sex=null, validYear=null, validMonth=null, validDay=null)");
+                                              .containsIgnoringCase("\"mrz\":{\"error\":false,\"missing\":false,\"nationalityCode\":\"FRA\",\"surname\":\"00000\",\"givenNames\":[\"LAURENCE\",\"DANI\"],\"documentNumber\":\"030673032626\",\"sex\":\"female\",\"documentNumberConfidence\":\"INVALID\",\"birthDateConfidence\":\"INVALID\"")
+                                              .containsIgnoringCase("\"givenNamesCapital\":[\"Laurence\",\"Dani\"]")
+                                              .containsIgnoringCase("\"mrzSide\":\"FRONT\"")
+                                              .doesNotContain("\"input\"");
   }
 }
@@ -0,0 +1,89 @@
+package com.chcekit.recognize.controllers;
+
+import com.chcekit.recognize.helper.TestHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ImageHeaderTest {
+
+  private Map<String, MultipartFile> files = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    files = TestHelper.fillFilesMap();
+  }
+
+  @Test
+  public void shouldReadDimensionsOfEveryTestImage() throws Exception {
+    for (Map.Entry<String, MultipartFile> file : files.entrySet()) {
+      //given
+      byte[] content = file.getValue().getBytes();
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(content));
+
+      //when
+      ImageHeader header = ImageHeader.parse(content, content.length);
+
+      //then
+      assertThat(header).as(file.getKey()).isNotNull();
+      assertThat(header.getFormat()).as(file.getKey()).isEqualTo(file.getKey().endsWith(".png") ? ImageHeader.PNG : ImageHeader.JPEG);
+      assertThat(header.getWidth()).as(file.getKey()).isEqualTo(decoded.getWidth());
+      assertThat(header.getHeight()).as(file.getKey()).isEqualTo(decoded.getHeight());
+    }
+  }
+
+  @Test
+  public void shouldNeedMoreBytesUntilTheHeaderIsComplete() throws Exception {
+    //given
+    byte[] content = files.get("face1.jpg").getBytes();
+    int headerLength = headerLength(content);
+
+    //then
+    assertThat(ImageHeader.parse(content, 0)).isNull();
+    assertThat(ImageHeader.parse(content, 1)).isNull();
+    assertThat(ImageHeader.parse(content, headerLength - 1)).isNull();
+    assertThat(ImageHeader.parse(content, headerLength)).isNotNull();
+    assertThat(headerLength).isLessThan(content.length / 10);
+  }
+
+  @Test
+  public void shouldRejectOtherContentFromTheFirstBytes() {
+    //given
+    byte[] gif = {'G', 'I', 'F', '8', '9', 'a'};
+    byte[] text = "{\"selfie\":\"...\"}".getBytes();
+
+    //then
+    assertThatThrownBy(() -> ImageHeader.parse(gif, 1)).isInstanceOf(UploadRejectedException.class)
+                                                       .hasMessageStartingWith("UNSUPPORTED_IMAGE");
+    assertThatThrownBy(() -> ImageHeader.parse(text, text.length)).isInstanceOf(UploadRejectedException.class);
+  }
+
+  @Test
+  public void shouldRejectJpegWithoutFrameHeader() {
+    //given SOI, APP0 of 4 bytes and SOS
+    byte[] content = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 4, 0, 0, (byte) 0xFF, (byte) 0xDA, 0, 2};
+
+    //then
+    assertThatThrownBy(() -> ImageHeader.parse(content, content.length)).isInstanceOf(UploadRejectedException.class)
+                                                                       .hasMessageContaining("frame header");
+  }
+
+  private static int headerLength(byte[] content) throws IOException {
+    for (int length = 0; length <= content.length; length++) {
+      if (ImageHeader.parse(content, length) != null) {
+        return length;
+      }
+    }
+    throw new IOException("no header");
+  }
+}
@@ -0,0 +1,124 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.within;
+
+public class AdaptiveLimiterTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  public void shouldShrinkLimitOnOverloadAndGrowOnSuccess() {
+    //given
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(1000, 10, 20));
+
+    //when
+    limiter.acquire(1).release(new IllegalStateException("throttled"));
+    double shrunk = limiter.getLimit();
+    limiter.acquire(1).release(new IllegalArgumentException("invalid image"));
+    double afterOtherFailure = limiter.getLimit();
+    for (int i = 0; i < 7; i++) {
+      limiter.acquire(1).release(null);
+    }
+
+    //then
+    assertThat(shrunk).isEqualTo(7.0, within(1e-9));
+    assertThat(afterOtherFailure).isEqualTo(shrunk);
+    assertThat(limiter.getLimit()).isBetween(7.9, 8.1);
+    assertThat(limiter.getInFlight()).isZero();
+    assertThat(meterRegistry.get("recognition.limiter.overloaded").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRejectCallsOverConcurrencyLimit() {
+    //given
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(1000, 2, 2));
+    AdaptiveLimiter.Permit first = limiter.acquire(1);
+    limiter.acquire(1);
+
+    //when
+    Throwable rejection = catchThrowable(() -> limiter.acquire(1));
+    first.release(null);
+    first.release(null);
+    int inFlight = limiter.getInFlight();
+    limiter.acquire(1);
+
+    //then
+    assertThat(rejection).isInstanceOf(RejectedExecutionException.class);
+    assertThat(inFlight).isEqualTo(1);
+    assertThat(meterRegistry.get("recognition.limiter.rejected").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRejectCallsOverRate() {
+    //given
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(1, 10, 10));
+
+    //when
+    limiter.call(1, () -> "first");
+
+    //then
+    assertThatThrownBy(() -> limiter.call(1, () -> "second")).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test
+  public void shouldWaitUpToTheMaxWaitOfTheLimit() {
+    //given tokens of the next half a second taken by a batch
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(20, 10, 10, 1000));
+    limiter.call(10, () -> "batch");
+
+    //when
+    String next = limiter.call(1, () -> "next");
+
+    //then
+    assertThat(next).isEqualTo("next");
+    assertThat(meterRegistry.get("recognition.limiter.rejected").counter().count()).isZero();
+  }
+
+  @Test
+  public void shouldNotTakeRateTokensWhenNoSlotIsFree() {
+    //given
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(20, 1, 1));
+    AdaptiveLimiter.Permit permit = limiter.acquire(1);
+
+    //when a batch waits for the only slot in vain
+    Throwable rejection = catchThrowable(() -> limiter.acquire(20));
+    permit.release(null);
+
+    //then the tokens of the batch are left for the next call
+    assertThat(rejection).isInstanceOf(RejectedExecutionException.class)
+                         .hasMessageContaining("concurrency limit");
+    limiter.acquire(1).release(null);
+    assertThat(limiter.getInFlight()).isZero();
+  }
+
+  @Test
+  public void shouldReturnSlotWhenRateLimitIsReached() {
+    //given
+    AdaptiveLimiter limiter = limiter(new RateLimitProperties.Limit(1, 10, 20));
+    limiter.call(1, () -> "first");
+
+    //when
+    Throwable rejection = catchThrowable(() -> limiter.acquire(1));
+
+    //then
+    assertThat(rejection).isInstanceOf(RejectedExecutionException.class)
+                         .hasMessageContaining("rate limit");
+    assertThat(limiter.getInFlight()).isZero();
+    assertThat(limiter.getLimit()).isEqualTo(10.1, within(1e-9));
+  }
+
+  private AdaptiveLimiter limiter(RateLimitProperties.Limit limit) {
+    RateLimitProperties properties = new RateLimitProperties();
+    properties.setMaxWaitMillis(50);
+    return new AdaptiveLimiter("test", properties, limit, e -> e instanceof IllegalStateException, meterRegistry);
+  }
+}
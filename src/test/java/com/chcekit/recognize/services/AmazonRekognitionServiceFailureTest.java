@@ -0,0 +1,112 @@
+package com.chcekit.recognize.services;
+
+import brave.Tracing;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.rekognition.AmazonRekognitionAsync;
+import com.amazonaws.services.rekognition.model.CompareFacesRequest;
+import com.amazonaws.services.rekognition.model.CompareFacesResult;
+import com.amazonaws.services.rekognition.model.Image;
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import com.chcekit.recognize.config.RateLimitProperties;
+import com.chcekit.recognize.model.FaceComparisonResult;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Failures of the async Rekognition client, runs offline.
+ */
+public class AmazonRekognitionServiceFailureTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final Tracing tracing = Tracing.newBuilder().build();
+  private final AmazonRekognitionAsync rekognitionClient = mock(AmazonRekognitionAsync.class);
+  private final RecognitionLimiters recognitionLimiters = new RecognitionLimiters(new RateLimitProperties(), meterRegistry);
+  private final ExecutorService recognitionExecutor = Executors.newSingleThreadExecutor();
+  private final AmazonRekognitionService amazonRekognitionService =
+    new AmazonRekognitionService(CacheBuilder.newBuilder().<String, FaceComparisonResult>build(),
+                                 new ImagePreprocessingService(new ImagePreprocessingProperties()), rekognitionClient, recognitionLimiters,
+                                 new StageTimer(meterRegistry), tracing.tracer(), recognitionExecutor);
+
+  @After
+  public void tearDown() {
+    recognitionExecutor.shutdownNow();
+    tracing.close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldSubmitTheCallFromTheRecognitionExecutor() throws Exception {
+    //given
+    AtomicReference<Thread> submittingThread = new AtomicReference<>();
+    doAnswer(invocation -> {
+      submittingThread.set(Thread.currentThread());
+      ((AsyncHandler<CompareFacesRequest, CompareFacesResult>) invocation.getArgument(1)).onSuccess(invocation.getArgument(0),
+                                                                                                     new CompareFacesResult().withFaceMatches(Collections.emptyList()));
+      return null;
+    }).when(rekognitionClient).compareFacesAsync(any(CompareFacesRequest.class), any(AsyncHandler.class));
+
+    //when
+    FaceComparisonResult result = amazonRekognitionService.compareFacesAsync(image(1), image(2)).get();
+
+    //then
+    assertThat(result.success).isFalse();
+    assertThat(submittingThread.get()).isNotNull()
+                                      .isNotEqualTo(Thread.currentThread());
+    assertThat(recognitionLimiters.rekognition().getInFlight()).isZero();
+  }
+
+  @Test
+  public void shouldFailTheFutureAsThrottledWhenTheRecognitionExecutorRejectsTheCall() {
+    //given
+    recognitionExecutor.shutdown();
+
+    //when
+    CompletableFuture<FaceComparisonResult> comparison = amazonRekognitionService.compareFacesAsync(image(1), image(2));
+    Throwable failure = catchThrowable(comparison::get);
+
+    //then
+    assertThat(failure).isInstanceOf(ExecutionException.class)
+                       .hasCauseInstanceOf(FaceComparisonException.class);
+    assertThat(((FaceComparisonException) failure.getCause()).getReason()).isEqualTo(FaceComparisonException.Reason.THROTTLED);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldFailTheFutureWhenTheCallCannotBeSubmitted() {
+    //given
+    when(rekognitionClient.compareFacesAsync(any(CompareFacesRequest.class), any(AsyncHandler.class)))
+      .thenThrow(new RejectedExecutionException("client executor shut down"));
+
+    //when
+    CompletableFuture<FaceComparisonResult> comparison = amazonRekognitionService.compareFacesAsync(image(1), image(2));
+    Throwable failure = catchThrowable(comparison::get);
+
+    //then
+    assertThat(failure).isInstanceOf(ExecutionException.class)
+                       .hasCauseInstanceOf(FaceComparisonException.class);
+    assertThat(((FaceComparisonException) failure.getCause()).getReason()).isEqualTo(FaceComparisonException.Reason.SERVICE_ERROR);
+    assertThat(recognitionLimiters.rekognition().getInFlight()).isZero();
+  }
+
+  private static Image image(int content) {
+    return new Image().withBytes(ByteBuffer.wrap(new byte[]{(byte) content}));
+  }
+}
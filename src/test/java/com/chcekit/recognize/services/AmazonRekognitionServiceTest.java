@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
 public class AmazonRekognitionServiceTest {
@@ -57,6 +59,19 @@ public class AmazonRekognitionServiceTest {
     softly.assertAll();
   }
 
+  @Test
+  public void testCompareFacesAsync() {
+    SoftAssertions softly = new SoftAssertions();
+    softly.assertThat(amazonRekognitionService.compareFacesAsync(imageMap.get("face1.jpg"), imageMap.get("face2.jpg")).join().isSuccess()).isTrue();
+    softly.assertThat(amazonRekognitionService.compareFacesAsync(imageMap.get("face1.jpg"), imageMap.get("face3.jpg")).join().isSuccess()).isFalse();
+
+    softly.assertThat(amazonRekognitionService.compareFacesAsync(imageMap.get("id_doc_pl_back.jpg"), imageMap.get("id_doc_pl_back.jpg")))
+          .hasFailedWithThrowableThat()
+          .isInstanceOfSatisfying(FaceComparisonException.class, e -> assertThat(e.getReason()).isEqualTo(FaceComparisonException.Reason.NO_FACE));
+
+    softly.assertAll();
+  }
+
   private Image createImage(String key){
     try {
       return new Image().withBytes(ByteBuffer.wrap(files.get(key).getBytes()));
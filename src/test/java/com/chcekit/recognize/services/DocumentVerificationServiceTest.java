@@ -0,0 +1,150 @@
+package com.chcekit.recognize.services;
+
+import com.amazonaws.services.rekognition.model.Image;
+import com.amazonaws.services.rekognition.model.ThrottlingException;
+import com.chcekit.recognize.config.FaceGateProperties;
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import com.chcekit.recognize.model.FaceComparisonResult;
+import com.chcekit.recognize.model.ImageBytes;
+import com.google.cloud.vision.v1.BoundingPoly;
+import com.google.cloud.vision.v1.FaceAnnotation;
+import com.google.cloud.vision.v1.Vertex;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DocumentVerificationServiceTest {
+
+  private final AmazonRekognitionService amazonRekognitionService = mock(AmazonRekognitionService.class);
+  private final DocumentVerificationService documentVerificationService =
+    new DocumentVerificationService(amazonRekognitionService, new ImagePreprocessingService(new ImagePreprocessingProperties()), new FaceGateProperties());
+
+  @Test
+  public void shouldSendOnlyFaceRegionsToRekognition() throws IOException {
+    //given
+    when(amazonRekognitionService.compareFaces(any(), any())).thenReturn(new FaceComparisonResult(true, 99));
+
+    //when
+    Optional<FaceComparisonResult> result = documentVerificationService.compareFaces(image(800, 600), Collections.singletonList(face(100, 100, 200, 200, 0.9f)),
+                                                                                     image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.5f)));
+
+    //then
+    ArgumentCaptor<Image> selfie = ArgumentCaptor.forClass(Image.class);
+    ArgumentCaptor<Image> idFront = ArgumentCaptor.forClass(Image.class);
+    verify(amazonRekognitionService).compareFaces(selfie.capture(), idFront.capture());
+
+    assertThat(result).contains(new FaceComparisonResult(true, 99));
+    assertThat(size(selfie.getValue())).containsExactly(400, 400);
+    assertThat(size(idFront.getValue())).containsExactly(200, 240);
+  }
+
+  @Test
+  public void shouldNotCompareFacesTooSmallOrMissing() throws IOException {
+    //when
+    Optional<FaceComparisonResult> smallSelfieFace = documentVerificationService.compareFaces(image(800, 600), Collections.singletonList(face(100, 100, 30, 30, 0.9f)),
+                                                                                              image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.9f)));
+    Optional<FaceComparisonResult> noDocumentFace = documentVerificationService.compareFaces(image(800, 600), Collections.singletonList(face(100, 100, 200, 200, 0.9f)),
+                                                                                             image(1000, 700), Collections.emptyList());
+
+    //then
+    assertThat(smallSelfieFace).isEmpty();
+    assertThat(noDocumentFace).isEmpty();
+    verify(amazonRekognitionService, never()).compareFaces(any(), any());
+  }
+
+  @Test
+  public void shouldNotCompareSelfieWithSeveralFaces() throws IOException {
+    //when
+    Optional<FaceComparisonResult> result = documentVerificationService.compareFaces(image(800, 600), Arrays.asList(face(100, 100, 200, 200, 0.9f), face(500, 100, 150, 150, 0.8f)),
+                                                                                     image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.9f)));
+
+    //then
+    assertThat(result).isEmpty();
+    verify(amazonRekognitionService, never()).compareFaces(any(), any());
+  }
+
+  @Test
+  public void shouldCompareFacesAsynchronously() throws IOException {
+    //given
+    when(amazonRekognitionService.compareFacesAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(new FaceComparisonResult(true, 99)));
+
+    //when
+    CompletableFuture<Optional<FaceComparisonResult>> result =
+      documentVerificationService.compareFacesAsync(image(800, 600), Collections.singletonList(face(100, 100, 200, 200, 0.9f)),
+                                                    image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.5f)));
+    CompletableFuture<Optional<FaceComparisonResult>> gated =
+      documentVerificationService.compareFacesAsync(image(800, 600), Collections.singletonList(face(100, 100, 30, 30, 0.9f)),
+                                                    image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.9f)));
+
+    //then
+    assertThat(result.join()).contains(new FaceComparisonResult(true, 99));
+    assertThat(gated.join()).isEmpty();
+    verify(amazonRekognitionService, never()).compareFaces(any(), any());
+  }
+
+  @Test
+  public void shouldFailAsyncComparisonWithReason() throws IOException {
+    //given
+    CompletableFuture<FaceComparisonResult> throttled = new CompletableFuture<>();
+    throttled.completeExceptionally(FaceComparisonException.of(new ThrottlingException("Rate exceeded")));
+    when(amazonRekognitionService.compareFacesAsync(any(), any())).thenReturn(throttled);
+
+    //when
+    CompletableFuture<Optional<FaceComparisonResult>> result =
+      documentVerificationService.compareFacesAsync(image(800, 600), Collections.singletonList(face(100, 100, 200, 200, 0.9f)),
+                                                    image(1000, 700), Collections.singletonList(face(600, 200, 100, 120, 0.9f)));
+
+    //then
+    assertThat(result).hasFailedWithThrowableThat()
+                      .isInstanceOfSatisfying(FaceComparisonException.class,
+                                              e -> assertThat(e.getReason()).isEqualTo(FaceComparisonException.Reason.THROTTLED));
+  }
+
+  private static FaceAnnotation face(int x, int y, int width, int height, float confidence) {
+    return FaceAnnotation.newBuilder()
+                         .setDetectionConfidence(confidence)
+                         .setBoundingPoly(BoundingPoly.newBuilder()
+                                                      .addVertices(Vertex.newBuilder().setX(x).setY(y))
+                                                      .addVertices(Vertex.newBuilder().setX(x + width).setY(y))
+                                                      .addVertices(Vertex.newBuilder().setX(x + width).setY(y + height))
+                                                      .addVertices(Vertex.newBuilder().setX(x).setY(y + height)))
+                         .build();
+  }
+
+  private static ImageBytes image(int width, int height) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", bytes);
+
+    Path file = Files.createTempFile("image", ".jpg");
+    file.toFile().deleteOnExit();
+    Files.write(file, bytes.toByteArray());
+    return ImageBytes.of(file);
+  }
+
+  private static int[] size(Image image) throws IOException {
+    ByteBuffer content = image.getBytes();
+    byte[] bytes = new byte[content.remaining()];
+    content.duplicate().get(bytes);
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+    return new int[]{decoded.getWidth(), decoded.getHeight()};
+  }
+}
@@ -0,0 +1,144 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrenchMrzParserServiceTest {
+
+  // OCR result of img/id_doc_fr_front.jpg
+  private static final String FRENCH_ID_MRZ = "IDFRA00000<<<<<<<<<<<<<<<<<<<<7640160306730326262LAURENCE<<DANI6616667F6AALAMYSTOCKPHOTODWTM1KWWW.ALAMY.COM";
+
+  // specimen card with valid check digits
+  private static final String SPECIMEN_MRZ = "IDFRABERTHIER<<<<<<<<<<<<<<<<<925902" + "8806923102858CORINNE<<<<<<<6512068F5";
+
+  private final FrenchMrzParserService frenchMrzParserService = new FrenchMrzParserService();
+
+  @Test
+  public void shouldParseFrenchIdMrz() {
+    //when
+    MrzData mrzData = frenchMrzParserService.parse(FRENCH_ID_MRZ);
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.isError()).isFalse();
+    assertThat(mrzData.getInput()).isEqualTo(FRENCH_ID_MRZ);
+    assertThat(mrzData.getNationalityCode()).isEqualTo("FRA");
+    assertThat(mrzData.getSurname()).isEqualTo("00000");
+    assertThat(mrzData.getGivenNames()).containsExactly("LAURENCE", "DANI");
+    // 661666 has a valid check digit but is not a date
+    assertThat(mrzData.getBirthYear()).isNull();
+    assertThat(mrzData.getBirthMonth()).isNull();
+    assertThat(mrzData.getBirthDay()).isNull();
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("030673032626");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getSex()).isEqualTo("female");
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldVerifyCheckDigits() {
+    //when
+    MrzData mrzData = frenchMrzParserService.parse(SPECIMEN_MRZ);
+
+    //then
+    assertThat(mrzData.getSurname()).isEqualTo("BERTHIER");
+    assertThat(mrzData.getGivenNames()).containsExactly("CORINNE", "");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("880692310285");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getBirthYear()).isEqualTo("1965");
+    assertThat(mrzData.getBirthMonth()).isEqualTo("12");
+    assertThat(mrzData.getBirthDay()).isEqualTo("06");
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getSex()).isEqualTo("female");
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldCorrectOcrConfusedDigits() {
+    //given 0 of the card number and of the birth date read as O, 5 of the composite check digit read as S
+    String mrz = SPECIMEN_MRZ.replace("8806923102858", "88O6923102858").replace("6512068F5", "6512O68FS");
+
+    //when
+    MrzData mrzData = frenchMrzParserService.parse(mrz);
+
+    //then
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("880692310285");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.CORRECTED);
+    assertThat(mrzData.getBirthDay()).isEqualTo("06");
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.CORRECTED);
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldDetectWrongCheckDigits() {
+    //given
+    String wrongCardNumber = SPECIMEN_MRZ.replace("8806923102858", "8806923102868");
+    String wrongComposite = SPECIMEN_MRZ.replace("6512068F5", "6512068F4");
+
+    //when
+    MrzData wrongCardNumberData = frenchMrzParserService.parse(wrongCardNumber);
+    MrzData wrongCompositeData = frenchMrzParserService.parse(wrongComposite);
+
+    //then
+    assertThat(wrongCardNumberData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(wrongCardNumberData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(wrongCompositeData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(wrongCompositeData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(wrongCompositeData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldNotCorrectMisreadsOutsideTheConfusions() {
+    //given 3 of the card number read as 8, the check digit 8 read as 3, and two confused letters
+    String misreadDigit = SPECIMEN_MRZ.replace("8806923102858", "8806928102858");
+    String misreadCheckDigit = SPECIMEN_MRZ.replace("8806923102858", "8806923102853");
+    String twoLetters = SPECIMEN_MRZ.replace("8806923102858", "88O69231O2858");
+
+    //when
+    MrzData misreadDigitData = frenchMrzParserService.parse(misreadDigit);
+    MrzData misreadCheckDigitData = frenchMrzParserService.parse(misreadCheckDigit);
+    MrzData twoLettersData = frenchMrzParserService.parse(twoLetters);
+
+    //then the card number is kept as read
+    assertThat(misreadDigitData.getDocumentNumber()).isEqualTo("880692810285");
+    assertThat(misreadDigitData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(misreadCheckDigitData.getDocumentNumber()).isEqualTo("880692310285");
+    assertThat(misreadCheckDigitData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(twoLettersData.getDocumentNumber()).isEqualTo("88O69231O285");
+    assertThat(twoLettersData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldNotVerifyCompositeOfIncompleteLines() {
+    //given fillers of the first line lost by OCR
+    MrzData mrzData = frenchMrzParserService.parse(SPECIMEN_MRZ.replace("<<<<<925902", "925902"));
+
+    //then
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getCompositeConfidence()).isNull();
+  }
+
+  @Test
+  public void shouldReturnSurnameWhenNamesAreTruncated() {
+    //when
+    MrzData mrzData = frenchMrzParserService.parse("IDFRABERTHIER<<<<<<<<<<<<<<<<<<<<<<<925902");
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getSurname()).isEqualTo("BERTHIER");
+    assertThat(mrzData.getGivenNames()).isNull();
+  }
+
+  @Test
+  public void shouldDetectMissingMrz() {
+    assertThat(frenchMrzParserService.parse(null).isMissing()).isTrue();
+    assertThat(frenchMrzParserService.parse("").isMissing()).isTrue();
+    assertThat(frenchMrzParserService.parse("P<UTOERIKSSON").isMissing()).isTrue();
+    assertThat(frenchMrzParserService.parse("IDFRA").isMissing()).isTrue();
+  }
+}
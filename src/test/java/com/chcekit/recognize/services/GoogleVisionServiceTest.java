@@ -136,10 +136,12 @@ public class GoogleVisionServiceTest {
     assertThat(mrzDataFace4.isMissing()).isTrue();
     assertThat(mrzDataFaces.isMissing()).isTrue();
     assertThat(mrzDataIdFrontPl.isMissing()).isTrue();
-    assertThat(mrzDataIdBackPl.isMissing()).isTrue();
     assertThat(mrzDataPoaJpg.isMissing()).isTrue();
     assertThat(mrzDataPoaPng.isMissing()).isTrue();
 
+    assertThat(mrzDataIdBackPl.isMissing()).isFalse();
+    assertThat(mrzDataIdBackPl.getPassportCountryCode()).isEqualTo("POL");
+
     assertThat(mrzDataIdFrontFr.isMissing()).isFalse();
    assertThat(mrzDataIdFrontFr.getInput()).isEqualTo("IDFRA00000<<<<<<<<<<<<<<<<<<<<7640160306730326262LAURENCE<<DANI6616667F6AALAMYSTOCKPHOTODWTM1KWWW.ALAMY.COM");
   }
@@ -0,0 +1,89 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImagePreprocessingServiceTest {
+
+  private final ImagePreprocessingService imagePreprocessingService = new ImagePreprocessingService(new ImagePreprocessingProperties());
+
+  @Test
+  public void shouldDownscaleUprightImage() throws Exception {
+    //given
+    ByteBuffer content = ByteBuffer.wrap(jpeg(2000, 1000));
+
+    //when
+    ByteBuffer downscaled = imagePreprocessingService.downscale(content, 1000);
+
+    //then
+    assertThat(imagePreprocessingService.dimensions(downscaled)).contains(new Dimension(1000, 500));
+  }
+
+  @Test
+  public void shouldKeepRotatedImageAsItIs() throws Exception {
+    //given a portrait picture stored as landscape pixels, as phone cameras do
+    ByteBuffer content = ByteBuffer.wrap(withOrientation(jpeg(2000, 1000), 6, false));
+
+    //when
+    ByteBuffer downscaled = imagePreprocessingService.downscale(content, 1000);
+    ByteBuffer cropped = imagePreprocessingService.crop(content, new Rectangle(0, 0, 100, 100));
+
+    //then
+    assertThat(ExifOrientation.of(content)).isEqualTo(6);
+    assertThat(downscaled).isSameAs(content);
+    assertThat(cropped).isSameAs(content);
+  }
+
+  @Test
+  public void shouldReadOrientationInBothByteOrders() throws Exception {
+    //given
+    byte[] jpeg = jpeg(100, 100);
+
+    //then
+    assertThat(ExifOrientation.of(ByteBuffer.wrap(withOrientation(jpeg, 6, false)))).isEqualTo(6);
+    assertThat(ExifOrientation.of(ByteBuffer.wrap(withOrientation(jpeg, 3, true)))).isEqualTo(3);
+    assertThat(ExifOrientation.of(ByteBuffer.wrap(withOrientation(jpeg, 1, true)))).isEqualTo(ExifOrientation.NORMAL);
+    assertThat(ExifOrientation.of(ByteBuffer.wrap(jpeg))).isEqualTo(ExifOrientation.NORMAL);
+    assertThat(ExifOrientation.of(ByteBuffer.wrap(new byte[]{1, 2, 3}))).isEqualTo(ExifOrientation.NORMAL);
+  }
+
+  private static byte[] jpeg(int width, int height) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpeg", content);
+    return content.toByteArray();
+  }
+
+  /**
+   * @return the JPEG with an APP1 EXIF segment holding only the orientation tag right after SOI
+   */
+  private static byte[] withOrientation(byte[] jpeg, int orientation, boolean littleEndian) {
+    ByteBuffer exif = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 12 + 4)
+                                .order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    exif.put((byte) 0xFF).put((byte) 0xE1);
+    // segment length is big endian regardless of the TIFF byte order
+    int length = exif.capacity() - 2;
+    exif.put((byte) (length >> 8)).put((byte) length);
+    exif.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+    exif.put(littleEndian ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'}).putShort((short) 42).putInt(8);
+    exif.putShort((short) 1);
+    exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+    exif.putInt(0);
+
+    byte[] result = new byte[jpeg.length + exif.capacity()];
+    System.arraycopy(jpeg, 0, result, 0, 2);
+    System.arraycopy(exif.array(), 0, result, 2, exif.capacity());
+    System.arraycopy(jpeg, 2, result, 2 + exif.capacity(), jpeg.length - 2);
+    return result;
+  }
+}
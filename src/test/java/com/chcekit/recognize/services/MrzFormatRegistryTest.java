@@ -0,0 +1,190 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MrzFormatRegistryTest {
+
+  private final MrzFormatRegistry mrzFormatRegistry = new MrzFormatRegistry(Arrays.asList(new MrzParserService(),
+                                                                                          new FrenchMrzParserService(),
+                                                                                          new Td1MrzParserService(),
+                                                                                          new Td2MrzParserService()));
+
+  @Test
+  public void shouldDetectPassportMrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("PASSPORT",
+                                                             "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<",
+                                                             "L898902C36UTO7408122F1204159ZE184226B<<<<<10"));
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L898902C3");
+  }
+
+  @Test
+  public void shouldDetectFrenchIdMrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("CARTE NATIONALE D'IDENTITE",
+                                                             "IDFRA00000<<<<<<<<<<<<<<<<<<<<764016",
+                                                             "0306730326262LAURENCE<<DANI6616667F6"));
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getNationalityCode()).isEqualTo("FRA");
+    assertThat(mrzData.getGivenNames()).containsExactly("LAURENCE", "DANI");
+  }
+
+  @Test
+  public void shouldDetectTd1Mrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("IDENTITY CARD",
+                                                             "I<POLADJ8000004<<<<<<<<<<<<<<<",
+                                                             "7203305F1103090POL<<<<<<<<<<<0",
+                                                             "KOWALSKA<<ANNA<<<<<<<<<<<<<<<<",
+                                                             "AUTHORITY"));
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getPassportCountryCode()).isEqualTo("POL");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("ADJ800000");
+    assertThat(mrzData.getBirthYear()).isEqualTo("1972");
+    assertThat(mrzData.getBirthMonth()).isEqualTo("03");
+    assertThat(mrzData.getBirthDay()).isEqualTo("30");
+    assertThat(mrzData.getSex()).isEqualTo("female");
+    assertThat(mrzData.getValidYear()).isEqualTo("2011");
+    assertThat(mrzData.getNationalityCode()).isEqualTo("POL");
+    assertThat(mrzData.getSurname()).isEqualTo("KOWALSKA");
+    assertThat(mrzData.getGivenNames()).containsExactly("ANNA", "");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getValidDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldVerifyTd1CompositeCheckDigit() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("I<UTOD231458907<<<<<<<<<<<<<<<",
+                                                             "7408122F1204159UTO<<<<<<<<<<<6",
+                                                             "ERIKSSON<<ANNA<MARIA<<<<<<<<<<"));
+
+    //then
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("D23145890");
+    assertThat(mrzData.getGivenNames()).containsExactly("ANNA", "MARIA");
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldDetectTd2Mrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("I<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<",
+                                                             "D231458907UTO7408122F1204159<<<<<<<6"));
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getPassportCountryCode()).isEqualTo("UTO");
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getGivenNames()).containsExactly("ANNA", "MARIA");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("D23145890");
+    assertThat(mrzData.getNationalityCode()).isEqualTo("UTO");
+    assertThat(mrzData.getBirthYear()).isEqualTo("1974");
+    assertThat(mrzData.getValidYear()).isEqualTo("2012");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldReadTd2MrzCutOffAfterTheExpiryDate() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("I<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<",
+                                                             "D231458907UTO7408122F120415"));
+
+    //then
+    assertThat(mrzData.isError()).isFalse();
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("D23145890");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getValidYear()).isEqualTo("2012");
+    assertThat(mrzData.getValidDateConfidence()).isEqualTo(MrzFieldConfidence.UNCHECKED);
+    assertThat(mrzData.getCompositeConfidence()).isNull();
+  }
+
+  @Test
+  public void shouldNotTakePassportSecondLineForTd1Mrz() {
+    //when the document number of the second line starts with C and OCR splits the lines
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("REISEPASS",
+                                                             "P<D<<MUSTERMANN<<ERIKA<<<<<<<<<<<<<<<<<<<<<<",
+                                                             "C01X00T478D<<6408125F2702283<<<<<<<<<<<<<<<4"));
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getPassportCountryCode()).isEqualTo("D<<");
+    assertThat(mrzData.getSurname()).isEqualTo("MUSTERMANN");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("C01X00T47");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldNotTakePassportSecondLineWithoutFillersForTd1Mrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<",
+                                                             "A898902C36UTO7408122F1204159ZE184226B<<<<<10"));
+
+    //then
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("A898902C3");
+  }
+
+  @Test
+  public void shouldPreferTheBottomMostMrz() {
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(Arrays.asList("IDFRA00000<<<<<<<<<<<<<<<<<<<<7640160306730326262LAURENCE<<DANI6616667F6",
+                                                             "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<",
+                                                             "L898902C36UTO7408122F1204159ZE184226B<<<<<10"));
+
+    //then
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+  }
+
+  @Test
+  public void shouldNotReadBlocksAboveMrz() {
+    //given
+    List<String> blocks = Arrays.asList("PASSPORT", "SURNAME", "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<", "L898902C36UTO7408122F1204159ZE184226B<<<<<10");
+    Set<Integer> read = new HashSet<>();
+    List<String> textBlocks = new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        read.add(index);
+        return blocks.get(index);
+      }
+
+      @Override
+      public int size() {
+        return blocks.size();
+      }
+    };
+
+    //when
+    MrzData mrzData = mrzFormatRegistry.detect(textBlocks);
+
+    //then
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(read).containsOnly(2, 3);
+  }
+
+  @Test
+  public void shouldReturnMissingWhenNoFormatMatches() {
+    assertThat(mrzFormatRegistry.detect(Arrays.asList()).isMissing()).isTrue();
+    assertThat(mrzFormatRegistry.detect(Arrays.asList("ADRESSE", "CARTE D'IDENTITE", "12 RUE DE LA PAIX")).isMissing()).isTrue();
+  }
+}
@@ -0,0 +1,73 @@
+package com.chcekit.recognize.services;
+
+import com.ibm.icu.text.Transliterator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MrzNormalizerTest {
+
+  private static final String[] INPUTS = {
+      "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<",
+      "p<utoeriksson<<anna<maria<<<<<<<<<<<<<<<<<<<",
+      "P<DEUMÜLLER<<JÖRG<<<<<<<<<<<<<<<<<<<<<<<<<",
+      "IDFRAÉLODIE<<FRANÇOISE<<<<<<<<<<<<<<<<<<<",
+      "P<RUSИВАНОВ<<ИВАН<<<<<<<<<<<<<<<<<<<<<<<",
+  };
+
+  @Test
+  public void shouldReturnAlreadyNormalizedTextAsIs() {
+    assertThat(MrzNormalizer.normalize(INPUTS[0])).isSameAs(INPUTS[0]);
+  }
+
+  @Test
+  public void shouldUpperCaseAsciiText() {
+    assertThat(MrzNormalizer.normalize(INPUTS[1])).isEqualTo(INPUTS[0]);
+  }
+
+  @Test
+  public void shouldTransliterateNonAsciiText() {
+    assertThat(MrzNormalizer.normalize(INPUTS[2])).isEqualTo("P<DEUMULLER<<JORG<<<<<<<<<<<<<<<<<<<<<<<<<");
+    assertThat(MrzNormalizer.normalize(INPUTS[3])).isEqualTo("IDFRAELODIE<<FRANCOISE<<<<<<<<<<<<<<<<<<<");
+    assertThat(MrzNormalizer.normalize(INPUTS[4])).isEqualTo("P<RUSIVANOV<<IVAN<<<<<<<<<<<<<<<<<<<<<<<");
+  }
+
+  @Test
+  public void shouldNormalizeConcurrently() throws Exception {
+    //given
+    Transliterator reference = Transliterator.getInstance(MrzNormalizer.LATIN_TO_ASCII);
+    String[] expected = new String[INPUTS.length];
+    for (int i = 0; i < INPUTS.length; i++) {
+      expected[i] = reference.transform(INPUTS[i].toUpperCase());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      //when
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int task = 0; task < 32; task++) {
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < 500; i++) {
+            if (!MrzNormalizer.normalize(INPUTS[i % INPUTS.length]).equals(expected[i % INPUTS.length])) {
+              return false;
+            }
+          }
+          return true;
+        }));
+      }
+
+      //then
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
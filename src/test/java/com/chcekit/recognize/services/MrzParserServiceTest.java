@@ -0,0 +1,117 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.model.MrzData;
+import com.chcekit.recognize.model.MrzFieldConfidence;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MrzParserServiceTest {
+
+  private static final String PASSPORT_MRZ = "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C36UTO7408122F1204159ZE184226B<<<<<10";
+
+  private final MrzParserService mrzParserService = new MrzParserService();
+
+  @Test
+  public void shouldParsePassportMrz() {
+    //when
+    MrzData mrzData = mrzParserService.parse(PASSPORT_MRZ);
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.isError()).isFalse();
+    assertThat(mrzData.getInput()).isEqualTo(PASSPORT_MRZ);
+    assertThat(mrzData.getPassportCountryCode()).isEqualTo("UTO");
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getGivenNames()).containsExactly("ANNA", "MARIA");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L898902C3");
+    assertThat(mrzData.getNationalityCode()).isEqualTo("UTO");
+    assertThat(mrzData.getBirthYear()).isEqualTo("1974");
+    assertThat(mrzData.getBirthMonth()).isEqualTo("08");
+    assertThat(mrzData.getBirthDay()).isEqualTo("12");
+    assertThat(mrzData.getSex()).isEqualTo("female");
+    assertThat(mrzData.getValidYear()).isEqualTo("2012");
+    assertThat(mrzData.getValidMonth()).isEqualTo("04");
+    assertThat(mrzData.getValidDay()).isEqualTo("15");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getValidDateConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.VALID);
+  }
+
+  @Test
+  public void shouldCorrectOcrConfusionsGuidedByCheckDigits() {
+    //when
+    MrzData mrzData = mrzParserService.parse("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L8989O2C36UTO74O8122F12O4159ZE184226B<<<<<1O");
+
+    //then passport numbers may have letters anywhere, so only the dates are corrected
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L8989O2C3");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getBirthMonth()).isEqualTo("08");
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.CORRECTED);
+    assertThat(mrzData.getValidMonth()).isEqualTo("04");
+    assertThat(mrzData.getValidDateConfidence()).isEqualTo(MrzFieldConfidence.CORRECTED);
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldKeepPassportNumberWithMisreadDigitAsRead() {
+    //when 3 read as 8
+    MrzData mrzData = mrzParserService.parse("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C86UTO7408122F1204159ZE184226B<<<<<10");
+
+    //then
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L898902C8");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldRejectImpossibleDatesAndWrongCheckDigits() {
+    //when
+    MrzData mrzData = mrzParserService.parse("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C32UTO7418122F1204158ZE184226B<<<<<10");
+
+    //then
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L898902C3");
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getBirthMonth()).isNull();
+    assertThat(mrzData.getBirthDateConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getValidMonth()).isEqualTo("04");
+    assertThat(mrzData.getValidDateConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+    assertThat(mrzData.getCompositeConfidence()).isEqualTo(MrzFieldConfidence.INVALID);
+  }
+
+  @Test
+  public void shouldNormalizeLowerCaseAndNonAsciiCharacters() {
+    //when
+    MrzData lowerCase = mrzParserService.parse(PASSPORT_MRZ.toLowerCase());
+    MrzData diacritics = mrzParserService.parse("P<DEUMÜLLER<<JÖRG<<<<<<<<<<<<<<<<<<<<<<<<<C01X00T478DEU6408125M2702283<<<<<<<<<<<<<<<4");
+
+    //then
+    assertThat(lowerCase.getInput()).isEqualTo(PASSPORT_MRZ);
+    assertThat(lowerCase.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(diacritics.getSurname()).isEqualTo("MULLER");
+    assertThat(diacritics.getGivenNames()).containsExactly("JORG", "");
+    assertThat(diacritics.getSex()).isEqualTo("male");
+  }
+
+  @Test
+  public void shouldReturnFieldsReadBeforeTruncation() {
+    //when
+    MrzData mrzData = mrzParserService.parse("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<L898902C3");
+
+    //then
+    assertThat(mrzData.isMissing()).isFalse();
+    assertThat(mrzData.getSurname()).isEqualTo("ERIKSSON");
+    assertThat(mrzData.getDocumentNumber()).isEqualTo("L898902C3");
+    assertThat(mrzData.getNationalityCode()).isNull();
+    assertThat(mrzData.getBirthYear()).isNull();
+    assertThat(mrzData.getDocumentNumberConfidence()).isEqualTo(MrzFieldConfidence.UNCHECKED);
+  }
+
+  @Test
+  public void shouldDetectMissingMrz() {
+    assertThat(mrzParserService.parse(null).isMissing()).isTrue();
+    assertThat(mrzParserService.parse("").isMissing()).isTrue();
+    assertThat(mrzParserService.parse("IDFRA00000<<<<").isMissing()).isTrue();
+    assertThat(mrzParserService.parse("P<U").isMissing()).isTrue();
+  }
+}
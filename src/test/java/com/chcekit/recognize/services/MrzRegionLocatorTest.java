@@ -0,0 +1,63 @@
+package com.chcekit.recognize.services;
+
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MrzRegionLocatorTest {
+
+  private final MrzRegionLocator mrzRegionLocator = new MrzRegionLocator(new ImagePreprocessingService(new ImagePreprocessingProperties()));
+
+  @Test
+  public void shouldLocateMrzBandAtTheBottomOfDocument() {
+    //given
+    BufferedImage document = blankDocument();
+    Graphics2D graphics = document.createGraphics();
+    graphics.setColor(Color.BLACK);
+    graphics.setFont(new Font(Font.MONOSPACED, Font.BOLD, 40));
+    graphics.drawString("SURNAME", 400, 150);
+    graphics.drawString("P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<", 20, 760);
+    graphics.drawString("L898902C36UTO7408122F1204159ZE184226B<<<<<10", 20, 820);
+    graphics.dispose();
+
+    //when
+    Optional<int[]> band = mrzRegionLocator.locateBand(document);
+
+    //then
+    assertThat(band).isPresent();
+    assertThat(band.get()[0]).isBetween(700, 740);
+    assertThat(band.get()[1]).isBetween(800, 840);
+  }
+
+  @Test
+  public void shouldNotLocateMrzBandWithoutTextLines() {
+    //given
+    BufferedImage document = blankDocument();
+    Graphics2D graphics = document.createGraphics();
+    graphics.setColor(Color.BLACK);
+    graphics.fillOval(200, 500, 300, 300);
+    graphics.dispose();
+
+    //when
+    Optional<int[]> band = mrzRegionLocator.locateBand(document);
+
+    //then
+    assertThat(band).isEmpty();
+  }
+
+  private static BufferedImage blankDocument() {
+    BufferedImage document = new BufferedImage(1100, 900, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = document.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, document.getWidth(), document.getHeight());
+    graphics.dispose();
+    return document;
+  }
+}
@@ -0,0 +1,47 @@
+package com.chcekit.recognize.services;
+
+import com.google.cloud.vision.v1.Block;
+import com.google.cloud.vision.v1.Page;
+import com.google.cloud.vision.v1.Paragraph;
+import com.google.cloud.vision.v1.Symbol;
+import com.google.cloud.vision.v1.TextAnnotation;
+import com.google.cloud.vision.v1.Word;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OcrTextBlocksTest {
+
+  @Test
+  public void shouldJoinSymbolsOfEachBlockAcrossPages() {
+    //given
+    TextAnnotation textAnnotation = TextAnnotation.newBuilder()
+                                                  .addPages(Page.newBuilder()
+                                                                .addBlocks(block("REPUBLIC", "OF", "UTOPIA"))
+                                                                .addBlocks(block("P<UTO", "ERIKSSON")))
+                                                  .addPages(Page.newBuilder()
+                                                                .addBlocks(block("L898902C3")))
+                                                  .build();
+
+    //when
+    List<String> textBlocks = OcrTextBlocks.of(textAnnotation);
+
+    //then
+    assertThat(textBlocks).containsExactly("REPUBLICOFUTOPIA", "P<UTOERIKSSON", "L898902C3");
+    assertThat(textBlocks.get(1)).isSameAs(textBlocks.get(1));
+  }
+
+  private static Block block(String... words) {
+    Paragraph.Builder paragraph = Paragraph.newBuilder();
+    for (String word : words) {
+      Word.Builder symbols = Word.newBuilder();
+      for (char character : word.toCharArray()) {
+        symbols.addSymbols(Symbol.newBuilder().setText(String.valueOf(character)));
+      }
+      paragraph.addWords(symbols);
+    }
+    return Block.newBuilder().addParagraphs(paragraph).build();
+  }
+}
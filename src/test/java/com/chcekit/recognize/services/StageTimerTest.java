@@ -0,0 +1,55 @@
+package com.chcekit.recognize.services;
+
+import com.google.cloud.vision.v1.Feature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class StageTimerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final StageTimer stageTimer = new StageTimer(meterRegistry);
+
+  @Test
+  public void shouldTagStagesByOutcome() {
+    //when
+    String result = stageTimer.record("vision.annotate", StageTimer.GOOGLE_VISION, "label", () -> "annotated");
+    Throwable rejected = catchThrowable(() -> stageTimer.record("vision.annotate", StageTimer.GOOGLE_VISION, "label", () -> {
+      throw new RejectedExecutionException("rate limit");
+    }));
+    Throwable failed = catchThrowable(() -> stageTimer.record("vision.annotate", StageTimer.GOOGLE_VISION, "label", () -> {
+      throw new IllegalStateException("unavailable");
+    }));
+
+    //then
+    assertThat(result).isEqualTo("annotated");
+    assertThat(rejected).isInstanceOf(RejectedExecutionException.class);
+    assertThat(failed).isInstanceOf(IllegalStateException.class);
+    for (String outcome : Arrays.asList(StageTimer.SUCCESS, StageTimer.REJECTED, StageTimer.ERROR)) {
+      assertThat(meterRegistry.get(StageTimer.METRIC)
+                              .tags("stage", "vision.annotate", "provider", StageTimer.GOOGLE_VISION, "feature", "label", "outcome", outcome)
+                              .timer()
+                              .count()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void shouldNameFeaturesRegardlessOfOrder() {
+    //given
+    Feature face = Feature.newBuilder().setType(Feature.Type.FACE_DETECTION).build();
+    Feature label = Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).build();
+    Feature text = Feature.newBuilder().setType(Feature.Type.DOCUMENT_TEXT_DETECTION).build();
+
+    //when
+    String features = StageTimer.features(Arrays.asList(text, label, face, label));
+
+    //then
+    assertThat(features).isEqualTo("document_text+face+label");
+    assertThat(StageTimer.features(Arrays.asList(label, face))).isEqualTo(StageTimer.features(Arrays.asList(face, label)));
+  }
+}
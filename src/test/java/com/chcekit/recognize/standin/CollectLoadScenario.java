@@ -0,0 +1,151 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.RecognizeApplication;
+import com.chcekit.recognize.helper.TestHelper;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of /api/collect against the Vision and Rekognition stand-ins.
+ * Every user sends the next request as soon as the previous one is answered,
+ * latencies are recorded after the warm-up and reported with throughput and failures.
+ * Run with ./gradlew loadTest, settings are system properties:
+ * <ul>
+ * <li>load.users, load.duration-seconds, load.warmup-seconds</li>
+ * <li>standin.vision.latency-ms, standin.vision.sigma, standin.rekognition.latency-ms, standin.rekognition.sigma</li>
+ * <li>standin.error-rate, standin.throttle-rate - applied to both stand-ins</li>
+ * </ul>
+ * The result cache is disabled so every request reaches the stand-ins.
+ * Program arguments are passed to the application, e.g. --recognize.rate-limit.enabled=false
+ * to measure the service itself rather than the configured API quota, or --spring.profiles.active=dev to trace every request.
+ */
+public class CollectLoadScenario {
+
+  // selfie, front and back of the document sets sent in turn
+  private static final String[][] DOCUMENT_SETS = {
+    {"face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg"},
+    {"face2.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg"}
+  };
+
+  private static final long HIGHEST_TRACKABLE_LATENCY_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  public static void main(String[] args) throws Exception {
+    int users = Integer.getInteger("load.users", 16);
+    long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("load.duration-seconds", 60));
+    long warmupMillis = TimeUnit.SECONDS.toMillis(Long.getLong("load.warmup-seconds", 10));
+
+    double errorRate = Double.parseDouble(System.getProperty("standin.error-rate", "0"));
+    double throttleRate = Double.parseDouble(System.getProperty("standin.throttle-rate", "0"));
+    StandInBehavior vision = StandInBehavior.immediate()
+                                            .withLatency(Long.getLong("standin.vision.latency-ms", 300),
+                                                         Double.parseDouble(System.getProperty("standin.vision.sigma", "0.4")))
+                                            .withErrorRate(errorRate)
+                                            .withThrottleRate(throttleRate);
+    StandInBehavior rekognition = StandInBehavior.immediate()
+                                                 .withLatency(Long.getLong("standin.rekognition.latency-ms", 500),
+                                                              Double.parseDouble(System.getProperty("standin.rekognition.sigma", "0.4")))
+                                                 .withErrorRate(errorRate)
+                                                 .withThrottleRate(throttleRate);
+
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RecognizeApplication.class)
+      .initializers(new StandInInitializer(vision, rekognition))
+      .properties("server.port=0", "recognize.result-cache.maximum-size=0", "recognize.result-cache.vision-maximum-kilobytes=0")
+      .run(args)) {
+
+      int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+      List<HttpEntity<MultiValueMap<String, Object>>> requests = requests();
+      RestTemplate restTemplate = new RestTemplate();
+      String url = "http://localhost:" + port + "/api/collect";
+
+      AtomicLong failures = new AtomicLong();
+      long start = System.currentTimeMillis();
+      long measureFrom = start + warmupMillis;
+      long end = measureFrom + durationMillis;
+
+      ExecutorService executor = Executors.newFixedThreadPool(users);
+      List<Future<Histogram>> userHistograms = new ArrayList<>();
+      for (int user = 0; user < users; user++) {
+        int offset = user;
+        userHistograms.add(executor.submit(() -> {
+          Histogram histogram = new Histogram(HIGHEST_TRACKABLE_LATENCY_MILLIS, 3);
+          for (int i = offset; System.currentTimeMillis() < end; i++) {
+            long requestStart = System.currentTimeMillis();
+            boolean failed;
+            try {
+              failed = !restTemplate.postForEntity(url, requests.get(i % requests.size()), String.class).getStatusCode().is2xxSuccessful();
+            } catch (RestClientException e) {
+              failed = true;
+            }
+            if (requestStart >= measureFrom) {
+              histogram.recordValue(Math.min(System.currentTimeMillis() - requestStart, HIGHEST_TRACKABLE_LATENCY_MILLIS));
+              if (failed) {
+                failures.incrementAndGet();
+              }
+            }
+          }
+          return histogram;
+        }));
+      }
+
+      Histogram latency = new Histogram(HIGHEST_TRACKABLE_LATENCY_MILLIS, 3);
+      for (Future<Histogram> userHistogram : userHistograms) {
+        latency.add(userHistogram.get());
+      }
+      executor.shutdown();
+
+      System.out.printf("%nusers %d, vision: %s, rekognition: %s%n", users, vision, rekognition);
+      System.out.printf("requests %d, failures %d, throughput %.1f req/s%n",
+                        latency.getTotalCount(), failures.get(), latency.getTotalCount() * 1000.0 / durationMillis);
+      System.out.printf("latency ms: p50 %d, p90 %d, p99 %d, max %d%n",
+                        latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+                        latency.getValueAtPercentile(99), latency.getMaxValue());
+    }
+  }
+
+  private static List<HttpEntity<MultiValueMap<String, Object>>> requests() throws IOException {
+    Map<String, MultipartFile> files = TestHelper.fillFilesMap();
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+    List<HttpEntity<MultiValueMap<String, Object>>> requests = new ArrayList<>();
+    for (String[] documentSet : DOCUMENT_SETS) {
+      MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+      parts.add("selfie", part(files.get(documentSet[0])));
+      parts.add("id_front", part(files.get(documentSet[1])));
+      parts.add("id_back", part(files.get(documentSet[2])));
+      requests.add(new HttpEntity<>(parts, headers));
+    }
+    return requests;
+  }
+
+  private static ByteArrayResource part(MultipartFile file) throws IOException {
+    String filename = file.getName();
+    return new ByteArrayResource(file.getBytes()) {
+      @Override
+      public String getFilename() {
+        return filename;
+      }
+    };
+  }
+}
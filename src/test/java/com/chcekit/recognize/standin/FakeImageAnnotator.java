@@ -0,0 +1,231 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import com.chcekit.recognize.helper.TestHelper;
+import com.chcekit.recognize.services.ImagePreprocessingService;
+import com.chcekit.recognize.services.MrzRegionLocator;
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesRequest;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.BoundingPoly;
+import com.google.cloud.vision.v1.FaceAnnotation;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Vertex;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.TextFormat;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.Dimension;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vision API stand-in serving BatchAnnotateImages over plaintext gRPC on a local port.
+ * Replays the responses recorded for the images of src/test/resources/img, see standin/vision,
+ * other images get an empty annotation.
+ * Images are recognized by content, also in the downscaled variants the application sends for label and face detection
+ * and in the MRZ strip sent for OCR with MRZ region crop enabled. Face positions are scaled to the variant the same way Vision would report them.
+ */
+public class FakeImageAnnotator implements Closeable {
+
+  static final MethodDescriptor<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse> BATCH_ANNOTATE_IMAGES =
+    MethodDescriptor.<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName("google.cloud.vision.v1.ImageAnnotator", "BatchAnnotateImages"))
+                    .setRequestMarshaller(ProtoUtils.marshaller(BatchAnnotateImagesRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(BatchAnnotateImagesResponse.getDefaultInstance()))
+                    .build();
+
+  private static final String RECORDINGS = "standin/vision/";
+
+  // Vision accepts requests up to this size, the gRPC default is lower
+  private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+  private final Map<String, AnnotateImageResponse> recordings;
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+  private final AtomicLong calls = new AtomicLong();
+  private final Server server;
+
+  private volatile StandInBehavior behavior;
+
+  private FakeImageAnnotator(Map<String, AnnotateImageResponse> recordings, StandInBehavior behavior) throws IOException {
+    this.recordings = recordings;
+    this.behavior = behavior;
+
+    ServerServiceDefinition service = ServerServiceDefinition.builder("google.cloud.vision.v1.ImageAnnotator")
+                                                             .addMethod(BATCH_ANNOTATE_IMAGES, ServerCalls.asyncUnaryCall(this::batchAnnotateImages))
+                                                             .build();
+    this.server = NettyServerBuilder.forPort(0)
+                                    .maxMessageSize(MAX_MESSAGE_SIZE)
+                                    .addService(service)
+                                    .build()
+                                    .start();
+  }
+
+  /**
+   * @param preprocessing preprocessing settings of the application, they decide which downscaled variants it sends
+   */
+  public static FakeImageAnnotator start(StandInBehavior behavior, ImagePreprocessingProperties preprocessing) throws IOException {
+    ImagePreprocessingService imagePreprocessingService = new ImagePreprocessingService(preprocessing);
+    MrzRegionLocator mrzRegionLocator = new MrzRegionLocator(imagePreprocessingService);
+    Map<String, AnnotateImageResponse> recordings = new HashMap<>();
+
+    for (Map.Entry<String, MultipartFile> fixture : TestHelper.fillFilesMap().entrySet()) {
+      Optional<AnnotateImageResponse> recording = recording(fixture.getKey());
+      if (!recording.isPresent()) {
+        continue;
+      }
+
+      ByteBuffer original = ByteBuffer.wrap(fixture.getValue().getBytes());
+      recordings.put(hash(original), recording.get());
+
+      for (int maxDimension : new int[]{preprocessing.getLabelMaxDimension(), preprocessing.getFaceMaxDimension()}) {
+        ByteBuffer downscaled = imagePreprocessingService.downscale(original, maxDimension);
+        if (downscaled != original) {
+          recordings.put(hash(downscaled), scaleFaces(recording.get(), scale(imagePreprocessingService, original, downscaled)));
+        }
+      }
+
+      // the strip is only OCRed, its text is the text of the whole document
+      mrzRegionLocator.locate(original).ifPresent(strip -> recordings.put(hash(strip), recording.get()));
+    }
+
+    return new FakeImageAnnotator(recordings, behavior);
+  }
+
+  /**
+   * @return host:port to be used as the Vision endpoint
+   */
+  public String getEndpoint() {
+    return "localhost:" + server.getPort();
+  }
+
+  /**
+   * @return number of BatchAnnotateImages calls received
+   */
+  public long getCalls() {
+    return calls.get();
+  }
+
+  public void setBehavior(StandInBehavior behavior) {
+    this.behavior = behavior;
+  }
+
+  @Override
+  public void close() {
+    server.shutdownNow();
+    scheduler.shutdownNow();
+  }
+
+  private void batchAnnotateImages(BatchAnnotateImagesRequest request, StreamObserver<BatchAnnotateImagesResponse> responseObserver) {
+    calls.incrementAndGet();
+    StandInBehavior current = behavior;
+
+    scheduler.schedule(() -> {
+      switch (current.nextOutcome()) {
+        case THROTTLED:
+          responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Quota exceeded for quota metric 'Requests'").asRuntimeException());
+          return;
+        case ERROR:
+          responseObserver.onError(Status.UNAVAILABLE.withDescription("The service is currently unavailable").asRuntimeException());
+          return;
+        default:
+          BatchAnnotateImagesResponse.Builder response = BatchAnnotateImagesResponse.newBuilder();
+          for (AnnotateImageRequest imageRequest : request.getRequestsList()) {
+            response.addResponses(annotate(imageRequest));
+          }
+          responseObserver.onNext(response.build());
+          responseObserver.onCompleted();
+      }
+    }, current.nextLatencyMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  // only the annotations of the requested features are returned, as by Vision
+  private AnnotateImageResponse annotate(AnnotateImageRequest request) {
+    AnnotateImageResponse recording = recordings.getOrDefault(hash(request.getImage().getContent().asReadOnlyByteBuffer()),
+                                                              AnnotateImageResponse.getDefaultInstance());
+
+    AnnotateImageResponse.Builder response = AnnotateImageResponse.newBuilder();
+    for (Feature feature : request.getFeaturesList()) {
+      switch (feature.getType()) {
+        case LABEL_DETECTION:
+          response.addAllLabelAnnotations(recording.getLabelAnnotationsList());
+          break;
+        case FACE_DETECTION:
+          response.addAllFaceAnnotations(recording.getFaceAnnotationsList());
+          break;
+        case TEXT_DETECTION:
+        case DOCUMENT_TEXT_DETECTION:
+          response.addAllTextAnnotations(recording.getTextAnnotationsList())
+                  .setFullTextAnnotation(recording.getFullTextAnnotation());
+          break;
+        default:
+          break;
+      }
+    }
+    return response.build();
+  }
+
+  private static Optional<AnnotateImageResponse> recording(String fixture) throws IOException {
+    String resource = RECORDINGS + fixture.substring(0, fixture.lastIndexOf('.')) + ".textproto";
+    InputStream input = FakeImageAnnotator.class.getClassLoader().getResourceAsStream(resource);
+    if (input == null) {
+      return Optional.empty();
+    }
+
+    try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+      AnnotateImageResponse.Builder response = AnnotateImageResponse.newBuilder();
+      TextFormat.merge(reader, response);
+      return Optional.of(response.build());
+    }
+  }
+
+  private static double scale(ImagePreprocessingService imagePreprocessingService, ByteBuffer original, ByteBuffer downscaled) {
+    Dimension originalSize = imagePreprocessingService.dimensions(original).orElseThrow(IllegalStateException::new);
+    Dimension downscaledSize = imagePreprocessingService.dimensions(downscaled).orElseThrow(IllegalStateException::new);
+    return (double) downscaledSize.width / originalSize.width;
+  }
+
+  private static AnnotateImageResponse scaleFaces(AnnotateImageResponse response, double scale) {
+    AnnotateImageResponse.Builder scaled = response.toBuilder();
+    for (FaceAnnotation.Builder face : scaled.getFaceAnnotationsBuilderList()) {
+      face.setBoundingPoly(scale(face.getBoundingPoly(), scale))
+          .setFdBoundingPoly(scale(face.getFdBoundingPoly(), scale));
+    }
+    return scaled.build();
+  }
+
+  private static BoundingPoly scale(BoundingPoly boundingPoly, double scale) {
+    BoundingPoly.Builder scaled = boundingPoly.toBuilder();
+    for (Vertex.Builder vertex : scaled.getVerticesBuilderList()) {
+      vertex.setX((int) Math.round(vertex.getX() * scale))
+            .setY((int) Math.round(vertex.getY() * scale));
+    }
+    return scaled.build();
+  }
+
+  private static String hash(ByteBuffer content) {
+    return Hashing.sha256().hashBytes(content.duplicate()).toString();
+  }
+}
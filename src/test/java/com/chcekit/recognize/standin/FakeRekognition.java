@@ -0,0 +1,119 @@
+package com.chcekit.recognize.standin;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rekognition stand-in answering CompareFaces over plain HTTP on a local port.
+ * Every comparison returns the recorded match of standin/rekognition/compare-faces.json,
+ * the images are not looked at.
+ */
+public class FakeRekognition implements Closeable {
+
+  private static final String COMPARE_FACES_TARGET = "RekognitionService.CompareFaces";
+  private static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+
+  private final byte[] compareFacesResponse;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicLong calls = new AtomicLong();
+  private final HttpServer server;
+
+  private volatile StandInBehavior behavior;
+
+  private FakeRekognition(byte[] compareFacesResponse, StandInBehavior behavior) throws IOException {
+    this.compareFacesResponse = compareFacesResponse;
+    this.behavior = behavior;
+
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  public static FakeRekognition start(StandInBehavior behavior) throws IOException {
+    try (InputStream input = FakeRekognition.class.getClassLoader().getResourceAsStream("standin/rekognition/compare-faces.json")) {
+      return new FakeRekognition(ByteStreams.toByteArray(input), behavior);
+    }
+  }
+
+  /**
+   * @return URL to be used as the Rekognition endpoint
+   */
+  public String getEndpoint() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return number of CompareFaces calls received
+   */
+  public long getCalls() {
+    return calls.get();
+  }
+
+  public void setBehavior(StandInBehavior behavior) {
+    this.behavior = behavior;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      // the request is read fully before answering as the client expects
+      ByteStreams.exhaust(exchange.getRequestBody());
+
+      if (!COMPARE_FACES_TARGET.equals(exchange.getRequestHeaders().getFirst("X-Amz-Target"))) {
+        respond(exchange, 400, error("UnknownOperationException", "Only CompareFaces is supported by the stand-in"));
+        return;
+      }
+
+      calls.incrementAndGet();
+      StandInBehavior current = behavior;
+      TimeUnit.MILLISECONDS.sleep(current.nextLatencyMillis());
+
+      switch (current.nextOutcome()) {
+        case THROTTLED:
+          respond(exchange, 400, error("ProvisionedThroughputExceededException", "Provisioned rate exceeded."));
+          break;
+        case ERROR:
+          respond(exchange, 500, error("InternalServerError", "Internal server error."));
+          break;
+        default:
+          respond(exchange, 200, compareFacesResponse);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+    exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static byte[] error(String type, String message) {
+    return ("{\"__type\":\"" + type + "\",\"Message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+  }
+}
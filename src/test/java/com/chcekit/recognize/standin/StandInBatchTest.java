@@ -0,0 +1,105 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.config.BatchVerificationProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * /api/collect/batch against the Vision and Rekognition stand-ins, runs offline.
+ * One item per Vision call and two calls in flight, so the batch goes through several chunk windows.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"recognize.batch.vision-batch-size=3", "recognize.batch.max-concurrent-vision-calls=2"})
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = StandInInitializer.class)
+public class StandInBatchTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private BatchVerificationProperties batchVerificationProperties;
+
+  @Before
+  public void setUp() throws Exception {
+    batchVerificationProperties.setBaseDirectory(new ClassPathResource("img").getFile().getAbsolutePath());
+  }
+
+  @After
+  public void tearDown() {
+    batchVerificationProperties.setBaseDirectory(null);
+  }
+
+  @Test
+  public void shouldStreamResultOfEveryItem() throws Exception {
+    //given
+    List<String> items = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      items.add(item("set" + i, "face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg"));
+    }
+    items.add(item("missing", "face1.jpg", "no_such_file.jpg", "id_doc_pl_back.jpg"));
+
+    //when
+    List<String> lines = verify(items.toArray(new String[0]));
+
+    //then
+    assertThat(lines).hasSize(6);
+    for (int i = 1; i <= 5; i++) {
+      String id = "\"id\":\"set" + i + "\"";
+      assertThat(lines).filteredOn(line -> line.contains(id))
+                       .hasSize(1)
+                       .allMatch(line -> line.contains("\"faceComparisonResult\":true") && line.contains("\"nationalityCode\":\"FRA\""));
+    }
+    assertThat(lines).filteredOn(line -> line.contains("\"id\":\"missing\""))
+                     .hasSize(1)
+                     .allMatch(line -> line.contains("Cannot read images"));
+  }
+
+  @Test
+  public void shouldReadMrzOfTheBackWhenTheFrontHasNone() throws Exception {
+    //when
+    List<String> lines = verify(item("fr", "face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg"),
+                                item("pl", "face2.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg"));
+
+    //then
+    assertThat(lines).filteredOn(line -> line.contains("\"id\":\"fr\""))
+                     .hasSize(1)
+                     .allMatch(line -> line.contains("\"nationalityCode\":\"FRA\"") && line.contains("\"mrzSide\":\"FRONT\""));
+    assertThat(lines).filteredOn(line -> line.contains("\"id\":\"pl\""))
+                     .hasSize(1)
+                     .allMatch(line -> line.contains("\"surname\":\"KOWALSKA\"") && line.contains("\"mrzSide\":\"BACK\""));
+  }
+
+  private List<String> verify(String... items) throws Exception {
+    MvcResult asyncResult = this.mockMvc.perform(post("/api/collect/batch").contentType(MediaType.APPLICATION_JSON)
+                                                                           .content("[" + String.join(",", items) + "]"))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+    asyncResult.getAsyncResult(TimeUnit.SECONDS.toMillis(60));
+    return Arrays.asList(asyncResult.getResponse().getContentAsString().split("\n"));
+  }
+
+  private static String item(String id, String selfie, String idFront, String idBack) {
+    return "{\"id\":\"" + id + "\",\"selfie\":\"" + selfie + "\",\"idFront\":\"" + idFront + "\",\"idBack\":\"" + idBack + "\"}";
+  }
+}
@@ -0,0 +1,77 @@
+package com.chcekit.recognize.standin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and failures of a stand-in API.
+ * Latency follows a log-normal distribution given by its median and the sigma of its logarithm,
+ * e.g. median 300 ms with sigma 0.5 puts the 99th percentile at about 960 ms.
+ */
+public final class StandInBehavior {
+
+  public enum Outcome {
+    OK,
+    ERROR,
+    THROTTLED
+  }
+
+  private final long medianLatencyMillis;
+  private final double latencySigma;
+  private final double errorRate;
+  private final double throttleRate;
+
+  private StandInBehavior(long medianLatencyMillis, double latencySigma, double errorRate, double throttleRate) {
+    this.medianLatencyMillis = medianLatencyMillis;
+    this.latencySigma = latencySigma;
+    this.errorRate = errorRate;
+    this.throttleRate = throttleRate;
+  }
+
+  /**
+   * @return immediate successful responses
+   */
+  public static StandInBehavior immediate() {
+    return new StandInBehavior(0, 0, 0, 0);
+  }
+
+  public StandInBehavior withLatency(long medianLatencyMillis, double latencySigma) {
+    return new StandInBehavior(medianLatencyMillis, latencySigma, errorRate, throttleRate);
+  }
+
+  /**
+   * @param errorRate share of calls failing with a transient server error
+   */
+  public StandInBehavior withErrorRate(double errorRate) {
+    return new StandInBehavior(medianLatencyMillis, latencySigma, errorRate, throttleRate);
+  }
+
+  /**
+   * @param throttleRate share of calls rejected as over quota
+   */
+  public StandInBehavior withThrottleRate(double throttleRate) {
+    return new StandInBehavior(medianLatencyMillis, latencySigma, errorRate, throttleRate);
+  }
+
+  long nextLatencyMillis() {
+    if (medianLatencyMillis <= 0) {
+      return 0;
+    }
+    return Math.round(medianLatencyMillis * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian()));
+  }
+
+  Outcome nextOutcome() {
+    double random = ThreadLocalRandom.current().nextDouble();
+    if (random < throttleRate) {
+      return Outcome.THROTTLED;
+    }
+    if (random < throttleRate + errorRate) {
+      return Outcome.ERROR;
+    }
+    return Outcome.OK;
+  }
+
+  @Override
+  public String toString() {
+    return "median latency " + medianLatencyMillis + " ms, sigma " + latencySigma + ", error rate " + errorRate + ", throttle rate " + throttleRate;
+  }
+}
@@ -0,0 +1,313 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.config.UploadProperties;
+import com.chcekit.recognize.helper.TestHelper;
+import com.chcekit.recognize.services.StageTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.sleuth.util.ArrayListSpanReporter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import zipkin2.Span;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/collect against the Vision and Rekognition stand-ins, runs offline.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"recognize.stage-timing.header=true", "spring.sleuth.sampler.probability=1.0"})
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = StandInInitializer.class)
+public class StandInCollectTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private FakeRekognition fakeRekognition;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private ArrayListSpanReporter spanReporter;
+
+  @Autowired
+  private UploadProperties uploadProperties;
+
+  private Map<String, MultipartFile> files = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    files = TestHelper.fillFilesMap();
+  }
+
+  @Test
+  public void shouldCollectDocumentsFromStandIns() throws Exception {
+    //when
+    String response = collect("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+
+    //then
+    assertThat(response).contains("\"faceDetected\":true")
+                        .contains("\"idFrontDocumentDetected\":true")
+                        .contains("\"idBackDocumentDetected\":true")
+                        .contains("\"faceComparisonResult\":true")
+                        .contains("\"nationalityCode\":\"FRA\"")
+                        .contains("\"givenNames\":[\"LAURENCE\",\"DANI\"]")
+                        .contains("\"mrzSide\":\"FRONT\"");
+  }
+
+  @Test
+  public void shouldReportThrottledFaceComparison() throws Exception {
+    //given
+    fakeRekognition.setBehavior(StandInBehavior.immediate().withThrottleRate(1));
+
+    //when
+    String response;
+    try {
+      response = collect("face2.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg");
+    } finally {
+      fakeRekognition.setBehavior(StandInBehavior.immediate());
+    }
+
+    //then
+    assertThat(response).contains("\"faceDetected\":true")
+                        .contains("\"idFrontDocumentDetected\":true")
+                        .contains("\"faceComparisonResult\":false")
+                        .contains("\"faceComparisonFailure\":\"THROTTLED\"")
+                        .contains("\"surname\":\"KOWALSKA\"")
+                        .contains("\"mrzSide\":\"BACK\"");
+  }
+
+  @Test
+  public void shouldReportStageLatencies() throws Exception {
+    //when
+    MvcResult mvcResult = perform("face1.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg");
+
+    //then
+    assertThat(mvcResult.getResponse().getHeader("Server-Timing")).contains("read;dur=")
+                                                                  .contains("vision_selfie;dur=")
+                                                                  .contains("vision_id_front;dur=")
+                                                                  .contains("face_comparison;dur=")
+                                                                  .contains("mrz_back;dur=")
+                                                                  .contains("total;dur=");
+    assertThat(meterRegistry.get(StageTimer.METRIC).tags("stage", "collect.read").timer().count()).isPositive();
+    assertThat(meterRegistry.find(StageTimer.METRIC).tags("stage", "vision.annotate", "provider", StageTimer.GOOGLE_VISION).meters()).isNotEmpty();
+    assertThat(meterRegistry.get(StageTimer.METRIC).tags("stage", "mrz.parse", "feature", "td1").timer().count()).isPositive();
+    assertThat(this.mockMvc.perform(get("/actuator/prometheus"))
+                           .andExpect(status().isOk())
+                           .andReturn()
+                           .getResponse()
+                           .getContentAsString()).contains("recognition_stage_seconds_bucket{")
+                                                 .contains("stage=\"vision.annotate\"");
+  }
+
+  @Test
+  public void shouldTraceStagesOfTheFanOut() throws Exception {
+    //given
+    spanReporter.clear();
+
+    //when
+    collect("face2.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+
+    //then
+    List<Span> spans = spanReporter.getSpans();
+    Span selfie = span(spans, "vision_selfie");
+    Span idFront = span(spans, "vision_id_front");
+    Span faceComparison = span(spans, "face_comparison");
+    assertThat(idFront.parentId()).isEqualTo(selfie.parentId());
+    assertThat(faceComparison.parentId()).isEqualTo(selfie.parentId());
+    assertThat(spans).allMatch(span -> span.traceId().equals(selfie.traceId()));
+
+    Span selfieAnnotate = child(spans, selfie, "vision.annotate");
+    assertThat(selfieAnnotate.tags()).containsEntry("vision.features", "face")
+                                     .containsEntry("vision.images", "1")
+                                     .containsKey("vision.sent.bytes");
+    assertThat(child(spans, faceComparison, "rekognition.compare-faces").tags()).containsKey("rekognition.source.sent.bytes");
+  }
+
+  @Test
+  public void shouldCollectDocumentsStreamedFromTheRequestBody() throws Exception {
+    //given
+    MultiValueMap<String, Object> parts = parts("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+    parts.add("mrz_input", "true");
+
+    //when
+    MvcResult asyncResult = this.mockMvc.perform(streamed(parts))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+    String response = this.mockMvc.perform(asyncDispatch(asyncResult))
+                                  .andExpect(status().isOk())
+                                  .andReturn()
+                                  .getResponse()
+                                  .getContentAsString();
+
+    //then
+    assertThat(response).contains("\"faceComparisonResult\":true")
+                        .contains("\"nationalityCode\":\"FRA\"")
+                        .contains("\"input\"");
+  }
+
+  @Test
+  public void shouldRejectUploadThatIsNotAnImage() throws Exception {
+    //given
+    MultiValueMap<String, Object> parts = parts("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+    parts.set("id_back", file("%PDF-1.4\n".getBytes()));
+
+    //then
+    assertThat(this.mockMvc.perform(streamed(parts))
+                           .andExpect(request().asyncNotStarted())
+                           .andExpect(status().isUnsupportedMediaType())
+                           .andReturn()
+                           .getResponse()
+                           .getContentAsString()).contains("UNSUPPORTED_IMAGE");
+  }
+
+  @Test
+  public void shouldRejectImageTooSmallForFaceComparison() throws Exception {
+    //given
+    MultiValueMap<String, Object> parts = parts("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+    parts.set("selfie", file(png(uploadProperties.getMinImageDimension() - 1)));
+
+    //then
+    assertThat(this.mockMvc.perform(streamed(parts))
+                           .andExpect(status().isBadRequest())
+                           .andReturn()
+                           .getResponse()
+                           .getContentAsString()).contains("INVALID_DIMENSIONS");
+  }
+
+  @Test
+  public void shouldRejectImageOverThePartLimit() throws Exception {
+    //given a valid JPEG header followed by more bytes than a part may have
+    byte[] face = files.get("face1.jpg").getBytes();
+    byte[] oversized = Arrays.copyOf(face, (int) uploadProperties.getMaxPartBytes() + 1);
+    MultiValueMap<String, Object> parts = parts("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+    parts.set("id_front", file(oversized));
+
+    //then
+    assertThat(this.mockMvc.perform(streamed(parts))
+                           .andExpect(status().isPayloadTooLarge())
+                           .andReturn()
+                           .getResponse()
+                           .getContentAsString()).contains("TOO_LARGE");
+  }
+
+  @Test
+  public void shouldRejectUploadWithoutAllImages() throws Exception {
+    //given
+    MultiValueMap<String, Object> parts = parts("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+    parts.remove("id_back");
+
+    //then
+    assertThat(this.mockMvc.perform(streamed(parts))
+                           .andExpect(status().isBadRequest())
+                           .andReturn()
+                           .getResponse()
+                           .getContentAsString()).contains("MISSING_PART");
+  }
+
+  private static Span span(List<Span> spans, String name) {
+    Optional<Span> span = spans.stream().filter(candidate -> name.equals(candidate.name())).findFirst();
+    assertThat(span).as("span " + name).isPresent();
+    return span.get();
+  }
+
+  private static Span child(List<Span> spans, Span parent, String name) {
+    Optional<Span> span = spans.stream().filter(candidate -> name.equals(candidate.name()) && parent.id().equals(candidate.parentId())).findFirst();
+    assertThat(span).as("span " + name + " in " + parent.name()).isPresent();
+    return span.get();
+  }
+
+  private String collect(String selfie, String idFront, String idBack) throws Exception {
+    return perform(selfie, idFront, idBack).getResponse()
+                                           .getContentAsString();
+  }
+
+  private MvcResult perform(String selfie, String idFront, String idBack) throws Exception {
+    MvcResult asyncResult = this.mockMvc.perform(multipart("/api/collect").file(new MockMultipartFile("selfie", files.get(selfie).getBytes()))
+                                                                          .file(new MockMultipartFile("id_front", files.get(idFront).getBytes()))
+                                                                          .file(new MockMultipartFile("id_back", files.get(idBack).getBytes())))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+
+    return this.mockMvc.perform(asyncDispatch(asyncResult))
+                       .andExpect(status().isOk())
+                       .andReturn();
+  }
+
+  private MultiValueMap<String, Object> parts(String selfie, String idFront, String idBack) throws IOException {
+    MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+    parts.add("selfie", file(files.get(selfie).getBytes()));
+    parts.add("id_front", file(files.get(idFront).getBytes()));
+    parts.add("id_back", file(files.get(idBack).getBytes()));
+    return parts;
+  }
+
+  private static ByteArrayResource file(byte[] content) {
+    return new ByteArrayResource(content) {
+      @Override
+      public String getFilename() {
+        return "upload";
+      }
+    };
+  }
+
+  private static byte[] png(int size) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), "png", content);
+    return content.toByteArray();
+  }
+
+  // raw multipart body as a browser sends it, the controller parses the stream itself
+  private static MockHttpServletRequestBuilder streamed(MultiValueMap<String, Object> parts) throws IOException {
+    MockHttpOutputMessage message = new MockHttpOutputMessage();
+    new FormHttpMessageConverter().write(parts, MediaType.MULTIPART_FORM_DATA, message);
+    return post("/api/collect").contentType(message.getHeaders().getContentType())
+                               .content(message.getBodyAsBytes());
+  }
+
+  @TestConfiguration
+  static class SpanReporterConfiguration {
+
+    @Bean
+    public ArrayListSpanReporter spanReporter() {
+      return new ArrayListSpanReporter();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.config.ImagePreprocessingProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Starts {@link FakeImageAnnotator} and {@link FakeRekognition} and points the Vision and Rekognition clients at them,
+ * so the application runs without credentials or network access.
+ * The stand-ins are registered as beans "fakeImageAnnotator" and "fakeRekognition" and stopped with the context.
+ */
+public class StandInInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+  private final StandInBehavior visionBehavior;
+  private final StandInBehavior rekognitionBehavior;
+
+  public StandInInitializer() {
+    this(StandInBehavior.immediate(), StandInBehavior.immediate());
+  }
+
+  public StandInInitializer(StandInBehavior visionBehavior, StandInBehavior rekognitionBehavior) {
+    this.visionBehavior = visionBehavior;
+    this.rekognitionBehavior = rekognitionBehavior;
+  }
+
+  @Override
+  public void initialize(ConfigurableApplicationContext context) {
+    // the stand-in has to know the downscaled variants of the fixtures the application sends
+    ImagePreprocessingProperties preprocessing = Binder.get(context.getEnvironment())
+                                                       .bind("recognize.preprocessing", Bindable.of(ImagePreprocessingProperties.class))
+                                                       .orElseGet(ImagePreprocessingProperties::new);
+    try {
+      FakeImageAnnotator imageAnnotator = FakeImageAnnotator.start(visionBehavior, preprocessing);
+      FakeRekognition rekognition = FakeRekognition.start(rekognitionBehavior);
+
+      TestPropertyValues.of("recognize.google-vision.endpoint=" + imageAnnotator.getEndpoint(),
+                            "recognize.google-vision.plaintext=true",
+                            "recognize.rekognition.endpoint=" + rekognition.getEndpoint(),
+                            "recognize.rekognition.anonymous=true")
+                        .applyTo(context);
+
+      context.getBeanFactory().registerSingleton("fakeImageAnnotator", imageAnnotator);
+      context.getBeanFactory().registerSingleton("fakeRekognition", rekognition);
+      context.addApplicationListener(event -> {
+        if (event instanceof ContextClosedEvent && ((ContextClosedEvent) event).getApplicationContext() == context) {
+          imageAnnotator.close();
+          rekognition.close();
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
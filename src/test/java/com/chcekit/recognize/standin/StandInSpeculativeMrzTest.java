@@ -0,0 +1,78 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.helper.TestHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/collect with both sides of the ID OCRed in parallel, runs offline.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "recognize.mrz.speculative-read=true")
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = StandInInitializer.class)
+public class StandInSpeculativeMrzTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  private Map<String, MultipartFile> files = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    files = TestHelper.fillFilesMap();
+  }
+
+  @Test
+  public void shouldTakeMrzOfTheFront() throws Exception {
+    //when
+    String response = collect("face1.jpg", "id_doc_fr_front.jpg", "id_doc_pl_back.jpg");
+
+    //then
+    assertThat(response).contains("\"nationalityCode\":\"FRA\"")
+                        .contains("\"mrzSide\":\"FRONT\"");
+  }
+
+  @Test
+  public void shouldTakeMrzOfTheBackWhenTheFrontHasNone() throws Exception {
+    //when
+    String response = collect("face2.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg");
+
+    //then
+    assertThat(response).contains("\"surname\":\"KOWALSKA\"")
+                        .contains("\"mrzSide\":\"BACK\"");
+  }
+
+  private String collect(String selfie, String idFront, String idBack) throws Exception {
+    MvcResult asyncResult = this.mockMvc.perform(multipart("/api/collect").file(new MockMultipartFile("selfie", files.get(selfie).getBytes()))
+                                                                          .file(new MockMultipartFile("id_front", files.get(idFront).getBytes()))
+                                                                          .file(new MockMultipartFile("id_back", files.get(idBack).getBytes())))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+
+    return this.mockMvc.perform(asyncDispatch(asyncResult))
+                       .andExpect(status().isOk())
+                       .andReturn()
+                       .getResponse()
+                       .getContentAsString();
+  }
+}
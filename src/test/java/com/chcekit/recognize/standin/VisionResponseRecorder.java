@@ -0,0 +1,54 @@
+package com.chcekit.recognize.standin;
+
+import com.chcekit.recognize.helper.TestHelper;
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Image;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.TextFormat;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Records the responses of the real Vision API for the test images as replayed by {@link FakeImageAnnotator}.
+ * Needs Google credentials, the first argument is the output directory, src/test/resources/standin/vision by default.
+ * Faces are recorded on the original image, the stand-in scales them for downscaled requests.
+ */
+public class VisionResponseRecorder {
+
+  private static final String[] FIXTURES = {"face1.jpg", "face2.jpg", "id_doc_fr_front.jpg", "id_doc_pl_front.jpg", "id_doc_pl_back.jpg"};
+
+  public static void main(String[] args) throws Exception {
+    Path output = Paths.get(args.length > 0 ? args[0] : "src/test/resources/standin/vision");
+    Files.createDirectories(output);
+    Map<String, MultipartFile> files = TestHelper.fillFilesMap();
+
+    try (ImageAnnotatorClient vision = ImageAnnotatorClient.create()) {
+      for (String fixture : FIXTURES) {
+        AnnotateImageRequest request = AnnotateImageRequest.newBuilder()
+                                                           .setImage(Image.newBuilder().setContent(ByteString.copyFrom(files.get(fixture).getBytes())))
+                                                           .addFeatures(Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION))
+                                                           .addFeatures(Feature.newBuilder().setType(Feature.Type.FACE_DETECTION))
+                                                           .addFeatures(Feature.newBuilder().setType(Feature.Type.DOCUMENT_TEXT_DETECTION))
+                                                           .build();
+        AnnotateImageResponse response = vision.batchAnnotateImages(Collections.singletonList(request)).getResponses(0);
+
+        Path recording = output.resolve(fixture.substring(0, fixture.lastIndexOf('.')) + ".textproto");
+        try (Writer writer = Files.newBufferedWriter(recording, StandardCharsets.UTF_8)) {
+          writer.write("# Vision response for img/" + fixture + " recorded by VisionResponseRecorder\n");
+          TextFormat.print(response, writer);
+        }
+        System.out.println("Recorded " + recording);
+      }
+    }
+  }
+}